@@ -1,10 +1,14 @@
 package com.example;
 
+import com.netty.annotation.OneWay;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @author yehuisheng
  */
 public interface PersonService {
 
+    @OneWay
     void add(String name, String sex, int age);
 
     Object get(String name);
@@ -17,4 +21,6 @@ public interface PersonService {
 
     int number(int n);
 
+    CompletableFuture<Integer> countAsync();
+
 }
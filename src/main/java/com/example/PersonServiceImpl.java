@@ -4,6 +4,7 @@ import com.google.gson.JsonObject;
 import com.netty.annotation.Service;
 import com.netty.util.ObjectUtil;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -52,4 +53,9 @@ public class PersonServiceImpl implements PersonService {
         return n;
     }
 
+    @Override
+    public CompletableFuture<Integer> countAsync() {
+        return CompletableFuture.completedFuture(personMap.size());
+    }
+
 }
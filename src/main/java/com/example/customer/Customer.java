@@ -1,13 +1,21 @@
 package com.example.customer;
 
 import com.example.PersonService;
+import com.google.gson.JsonObject;
 import com.netty.annotation.AutoImport;
 import com.netty.annotation.EnableRpcClient;
 import com.netty.annotation.Reference;
+import com.netty.client.RpcAsync;
 import com.netty.config.RpcThreadPool;
+import com.netty.metrics.RpcMetrics;
 import com.netty.reflection.Applications;
+import com.netty.serialize.BinarySerializer;
+import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author yehuisheng
@@ -22,46 +30,80 @@ public class Customer {
 
     /** 调用次数 */
     private final static int TIMES = 5000;
+    /** 每次任务发起的远程调用次数 */
+    private final static int CALLS = 8;
     private final static Random RANDOM = new Random();
     private static Integer num;
 
     public static void main(String[] args) {
 
+        // get、remove 声明的返回值是 Object，实际返回的 JsonObject 需要手动加入反序列化的白名单
+        BinarySerializer.allow(JsonObject.class);
         Applications.run();
         long millis = System.currentTimeMillis();
+        // 线程池队列已满时任务由当前线程执行，不能再用线程池的任务数判断是否执行完毕
+        AtomicInteger completed = new AtomicInteger();
+        // 异步调用的 Future，统计指标之前等待它们完成
+        ConcurrentLinkedQueue<CompletableFuture<?>> futures = new ConcurrentLinkedQueue<>();
 
         // 多线程执行远程访问
         for (int i = 0; i < TIMES; i++) {
             int finalI = i;
             num = i;
             rpcThreadPool.execute(() -> {
-                String name = name();
-                String sex = sex();
-                int age = age();
-                personService.add(name, sex, age);
-
-                name = name();
-                Object person = personService.get(name);
-                System.out.println(finalI + " -> call get(" + name + ") = " + person);
-
-                name = name();
-                Object remove = personService.remove(name);
-                System.out.println(finalI + " -> call remove(" + name + ") = " + remove);
-
-                System.out.println(finalI + " -> call count = " + personService.count());
-                System.out.println(finalI + " -> call number(int) = " + personService.number(finalI));
-                System.out.println(num + " -> call number(Integer) = " + personService.number(num));
+                try {
+                    String name = name();
+                    String sex = sex();
+                    int age = age();
+                    personService.add(name, sex, age);
+
+                    name = name();
+                    Object person = personService.get(name);
+                    System.out.println(finalI + " -> call get(" + name + ") = " + person);
+
+                    name = name();
+                    Object remove = personService.remove(name);
+                    System.out.println(finalI + " -> call remove(" + name + ") = " + remove);
+
+                    System.out.println(finalI + " -> call count = " + personService.count());
+                    System.out.println(finalI + " -> call number(int) = " + personService.number(finalI));
+                    System.out.println(num + " -> call number(Integer) = " + personService.number(num));
+
+                    // 异步调用，不阻塞当前线程
+                    futures.add(personService.countAsync().thenAccept(count ->
+                            System.out.println(finalI + " -> call countAsync = " + count)));
+                    futures.add(RpcAsync.call(() -> personService.number(finalI)).thenAccept(number ->
+                            System.out.println(finalI + " -> call async number(int) = " + number)));
+                } finally {
+                    completed.incrementAndGet();
+                }
             });
         }
 
         // 线程池的任务执行完毕，才执行剩下的代码
-        while (rpcThreadPool.getTaskCount() != rpcThreadPool.getCompletedTaskCount()) {}
+        while (completed.get() < TIMES) {
+            Thread.onSpinWait();
+        }
+        // 异步调用的响应也到达之后，刷新次数才包含全部的请求
+        int failed = 0;
+        for (CompletableFuture<?> future : futures) {
+            try {
+                future.join();
+            } catch (RuntimeException e) {
+                failed++;
+            }
+        }
 
-        System.err.println("交由线程池的总任务数量：" + TIMES);
-        System.err.println("线程池完成的任务数量：" + rpcThreadPool.getCompletedTaskCount());
-        System.err.println("线程池未完成的任务数量：" + (TIMES - rpcThreadPool.getCompletedTaskCount()));
+        System.err.println("总任务数量：" + TIMES);
+        System.err.println("完成的任务数量：" + completed.get());
+        System.err.println("未完成的任务数量：" + (TIMES - completed.get()));
+        System.err.println("失败的异步调用数量：" + failed);
         long time = System.currentTimeMillis() - millis;
         System.err.println("耗时：" + (time/1000) + "秒" + (time%1000) + "毫秒");
+        // 每次刷新对应一次发送数据的系统调用
+        Map<String, Long> metrics = RpcMetrics.snapshot();
+        System.err.println("客户端指标：" + metrics);
+        System.err.println("每个请求的刷新次数：" + (double) metrics.get("transport.flushes") / (TIMES * CALLS));
 
         Applications.close();
 
@@ -0,0 +1,17 @@
+package com.netty.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ *  单向调用注解，只发送请求，不等待服务端的响应，服务端也不会回传结果。
+ *  标注在接口方法上只对该方法生效，标注在 @Reference 字段上对该接口所有无返回值的方法生效
+ * @author yehuisheng
+ */
+@Target({ElementType.METHOD, ElementType.FIELD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface OneWay {
+
+}
@@ -13,4 +13,13 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface Reference {
 
+    /** 调用超时时间（单位毫秒），小于 0 表示使用配置文件中的超时时间，0 表示不超时 */
+    long timeout() default -1;
+
+    /** 负载均衡方式，为空表示使用配置文件中的 loadBalance，consistentHash 表示按参数一致性哈希 */
+    String loadBalance() default "";
+
+    /** 一致性哈希使用第几个参数（从 0 开始）作为路由的 key，方法没有该参数时随机选择 */
+    int hashArgument() default 0;
+
 }
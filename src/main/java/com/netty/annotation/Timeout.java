@@ -0,0 +1,19 @@
+package com.netty.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ *  接口方法的调用超时时间，优先于 @Reference 和配置文件中的超时时间
+ * @author yehuisheng
+ */
+@Target({ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Timeout {
+
+    /** 超时时间（单位毫秒），0 表示不超时 */
+    long value();
+
+}
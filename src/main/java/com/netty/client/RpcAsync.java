@@ -0,0 +1,125 @@
+package com.netty.client;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ *
+ *  把任意 @Reference 接口的调用变成异步调用，例如：
+ *      CompletableFuture&lt;Integer&gt; future = RpcAsync.call(() -&gt; personService.count());
+ *
+ *  在 call 方法内，代理对象发出请求后不会阻塞等待结果，而是把 Future 记录到当前线程，
+ *  代理方法本身返回类型的默认值，call 方法再把记录的 Future 返回给调用者。
+ *  Future 由 netty 的 IO 线程在收到响应时完成，因此后续的回调也会在 IO 线程上执行，
+ *  回调中如果有耗时操作，应该使用 xxxAsync 方法切换到其他线程池。
+ *
+ *  每次 call 只能发起一次有响应的远程调用：
+ *      调用 @OneWay 方法没有 Future 可以返回，在发送之前抛出 IllegalStateException；
+ *      发起第二次远程调用时前一次的 Future 会丢失，第二次调用在发送之前抛出 IllegalStateException；
+ *      没有发起远程调用时抛出 IllegalArgumentException
+ *
+ * @author yehuisheng
+ */
+public class RpcAsync {
+
+    /** 当前线程是否处于异步调用中 */
+    private static final ThreadLocal<Boolean> ASYNC = new ThreadLocal<>();
+    /** 当前线程最近一次异步调用返回的 Future */
+    private static final ThreadLocal<CompletableFuture<?>> FUTURE = new ThreadLocal<>();
+
+    private RpcAsync() {
+    }
+
+    /**
+     * @param call  对远程接口的一次调用
+     * @param <T>   返回值类型
+     * @return      以异步的方式执行远程调用，返回调用结果的 Future
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> CompletableFuture<T> call(Supplier<T> call) {
+        ASYNC.set(Boolean.TRUE);
+        try {
+            call.get();
+            CompletableFuture<?> future = FUTURE.get();
+            if (future == null) {
+                throw new IllegalArgumentException("没有发起远程调用");
+            }
+            return (CompletableFuture<T>) future;
+        } finally {
+            ASYNC.remove();
+            FUTURE.remove();
+        }
+    }
+
+    /**
+     * @param call  对远程接口的一次调用（通常是无返回值的方法）
+     * @return      以异步的方式执行远程调用，返回调用完成的 Future
+     */
+    public static CompletableFuture<Object> run(Runnable call) {
+        return call(() -> {
+            call.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return  当前线程是否处于异步调用中
+     */
+    static boolean isAsync() {
+        return ASYNC.get() != null;
+    }
+
+    /**
+     * @param method    即将在 call 中发起的远程调用
+     * @param oneWay    是否单向调用
+     */
+    static void checkCall(Method method, boolean oneWay) {
+        if (oneWay) {
+            throw new IllegalStateException("单向调用没有返回结果，不能在 RpcAsync 中调用：" + method);
+        }
+        if (FUTURE.get() != null) {
+            throw new IllegalStateException("RpcAsync 的一次调用中只能发起一次远程调用：" + method);
+        }
+    }
+
+    /**
+     * @param future    记录当前线程异步调用返回的 Future
+     */
+    static void setFuture(CompletableFuture<?> future) {
+        FUTURE.set(future);
+    }
+
+    /**
+     * @param type  方法的返回值类型
+     * @return      返回值类型的默认值，基本类型不能返回 null，否则拆箱时会抛出空指针异常
+     */
+    static Object defaultValue(Class<?> type) {
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0F;
+        }
+        return 0D;
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.netty.client;
+
+import com.netty.metrics.RpcMetrics;
+import com.netty.model.RequestMsg;
+import io.netty.channel.EventLoop;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ *  连接上的调用合并器，多个线程同时发起的调用先放入队列，
+ *  满 batchSize 个立即发送，否则由 EventLoop 在等待 delayMicros 微秒后统一发送，
+ *  一次发送的多个调用合并成一个批量请求消息，只需一次序列化、一次写操作和一次服务端分发
+ *
+ * @author yehuisheng
+ */
+class RpcBatcher {
+
+    private static final LongAdder BATCHES = RpcMetrics.counter("client.batches");
+    private static final LongAdder BATCHED_CALLS = RpcMetrics.counter("client.batchedCalls");
+
+    private final RpcConnection connection;
+    private final EventLoop eventLoop;
+    /** 一个批量请求最多包含的调用数 */
+    private final int batchSize;
+    /** 等待更多调用加入的时间（单位微秒），0 表示只合并 EventLoop 执行发送任务前到达的调用 */
+    private final long delayMicros;
+
+    /** 等待发送的调用 */
+    private final Queue<Call> queue = new ConcurrentLinkedQueue<>();
+    /** 队列中的调用数，ConcurrentLinkedQueue.size 需要遍历队列 */
+    private final AtomicInteger size = new AtomicInteger();
+    /** 是否已经提交了发送任务 */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    RpcBatcher(RpcConnection connection, EventLoop eventLoop, int batchSize, long delayMicros) {
+        this.connection = connection;
+        this.eventLoop = eventLoop;
+        this.batchSize = batchSize;
+        this.delayMicros = delayMicros;
+    }
+
+    /**
+     * @param requestId     请求ID
+     * @param request       请求对象，放入队列等待合并发送
+     * @param deadline      截止时间（System.nanoTime），0 表示不超时
+     */
+    void add(long requestId, RequestMsg request, long deadline) {
+        queue.offer(new Call(requestId, request, deadline));
+        if (size.incrementAndGet() >= batchSize) {
+            // 已经攒够一批，由当前线程直接发送
+            flush();
+        } else if (scheduled.compareAndSet(false, true)) {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        try {
+            if (delayMicros > 0) {
+                eventLoop.schedule(this::scheduledFlush, delayMicros, TimeUnit.MICROSECONDS);
+            } else {
+                eventLoop.execute(this::scheduledFlush);
+            }
+        } catch (RejectedExecutionException e) {
+            // EventLoop 已经关闭，由当前线程发送，写操作失败后调用会以异常结束
+            scheduledFlush();
+        }
+    }
+
+    private void scheduledFlush() {
+        // 必须先清除标记再发送，发送期间加入的调用会重新提交发送任务，不会遗漏
+        scheduled.set(false);
+        flush();
+    }
+
+    /**
+     *  取出队列中的所有调用，每 batchSize 个合并成一个消息发送
+     */
+    private void flush() {
+        List<Call> calls = new ArrayList<>(Math.min(batchSize, Math.max(size.get(), 1)));
+        Call call;
+        while ((call = queue.poll()) != null) {
+            size.decrementAndGet();
+            calls.add(call);
+            if (calls.size() == batchSize) {
+                write(calls);
+                calls = new ArrayList<>(batchSize);
+            }
+        }
+        if (!calls.isEmpty()) {
+            write(calls);
+        }
+    }
+
+    private void write(List<Call> calls) {
+        // 等待合并期间已经超时或被调用方取消的调用不再发送，也不参与截止时间的计算
+        calls.removeIf(call -> !connection.isPending(call.requestId));
+        if (calls.isEmpty()) {
+            return;
+        }
+        if (calls.size() == 1) {
+            // 只有一个调用，使用普通的请求消息
+            Call call = calls.get(0);
+            connection.write(call.requestId, call.request, call.deadline);
+            return;
+        }
+        long[] requestIds = new long[calls.size()];
+        RequestMsg[] requests = new RequestMsg[calls.size()];
+        // 批量请求使用最晚的截止时间，有一个调用不超时则整个批量请求都不超时
+        long deadline = calls.get(0).deadline;
+        for (int i = 0; i < requestIds.length; i++) {
+            Call call = calls.get(i);
+            requestIds[i] = call.requestId;
+            requests[i] = call.request;
+            if (deadline != 0 && (call.deadline == 0 || call.deadline - deadline > 0)) {
+                deadline = call.deadline;
+            }
+        }
+        BATCHES.increment();
+        BATCHED_CALLS.add(requestIds.length);
+        connection.writeBatch(requestIds, requests, deadline);
+    }
+
+    /**
+     *  等待发送的一次调用
+     */
+    private static final class Call {
+
+        private final long requestId;
+        private final RequestMsg request;
+        private final long deadline;
+
+        private Call(long requestId, RequestMsg request, long deadline) {
+            this.requestId = requestId;
+            this.request = request;
+            this.deadline = deadline;
+        }
+
+    }
+
+}
@@ -2,23 +2,21 @@ package com.netty.client;
 
 import com.netty.annotation.ObjectScan;
 import com.netty.code.MsgProtocol;
-import com.netty.model.Null;
-import com.netty.model.RequestMsg;
-import com.netty.model.Void;
-import com.netty.util.ByteUtil;
+import com.netty.metrics.RpcMetrics;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-import java.util.function.Supplier;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  *
- *  当前处理器只需做这样的一件事：获取接口的请求方法、形参，将这些数据发送到服务端，
- *      然后调用 Object 的 wait 方法，线程进入等待状态，
- *      处理器接收到服务端的处理结果后，就调用 Object 的 notify 方法唤醒等待的线程，通知等待的线程将结果返回
+ *  当前处理器只需做这样的一件事：读取服务端的处理结果，交给 channel 对应的 RpcConnection，
+ *      RpcConnection 根据响应携带的请求ID找到等待中的调用并完成它。
+ *      同一个 channel 上可以同时有多个请求在途，响应乱序到达也能正确匹配。
+ *      连接一段时间没有写出数据时发送心跳，一段时间没有读到任何数据时认为连接已经失效，关闭后由 RpcConnection 重连。
+ *      有在途请求时多等一个空闲周期，连续两个周期都没有读到数据才关闭
  *
  *  @ChannelHandler.Sharable 添加注解只是标明当前 Handler 是可共享的，会在添加到 Pipeline 时去做判断，
  *                           如果 Handler 是单例，但是没有添加 Sharable 注解，Netty 就会抛异常。
@@ -28,31 +26,56 @@ import java.util.function.Supplier;
  */
 @ObjectScan
 @ChannelHandler.Sharable
-public class RpcClientHandler<T> extends SimpleChannelInboundHandler<MsgProtocol> implements Supplier<T> {
+public class RpcClientHandler extends SimpleChannelInboundHandler<MsgProtocol> {
 
-    private ChannelHandlerContext channel;
+    /** 空闲超时而关闭的连接数 */
+    private static final LongAdder IDLE_CLOSES = RpcMetrics.counter("client.idleCloses");
+    /** 有在途请求时读空闲，先发送心跳而不是关闭的次数 */
+    private static final LongAdder IDLE_PROBES = RpcMetrics.counter("client.idleProbes");
 
-    /** 请求结果 */
-    private Object result;
-    /** 请求对象 */
-    private RequestMsg request;
-
-    /** 加锁，Java默认非公平锁，通过fair参数可以设置，true:公平锁，false:非公平锁 */
-    private final Lock lock = new ReentrantLock();
-    /** 对象监视器 */
-    private final Condition condition = lock.newCondition();
-
-    public void setRequest(RequestMsg request) {
-        this.request = request;
+    /**
+     *  连接断开，等待中的请求不会再有响应，全部以异常结束
+     * @param ctx   channel上下文对象
+     */
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        RpcConnection connection = ctx.channel().attr(RpcConnection.CONNECTION_KEY).get();
+        if (connection != null) {
+            // 这些请求可能已经被服务端执行，不能自动重新发送
+            connection.failAll(new RpcConnectionException("与服务端的连接已断开", true, null));
+        }
     }
 
     /**
-     *  与服务端成功建立连接
      * @param ctx   channel上下文对象
+     * @param evt   IdleStateHandler 触发的空闲事件
      */
     @Override
-    public void channelActive(ChannelHandlerContext ctx) {
-        channel = ctx;
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+        if (!(evt instanceof IdleStateEvent)) {
+            ctx.fireUserEventTriggered(evt);
+            return;
+        }
+        IdleStateEvent event = (IdleStateEvent) evt;
+        if (event.state() == IdleState.READER_IDLE) {
+            RpcConnection connection = ctx.channel().attr(RpcConnection.CONNECTION_KEY).get();
+            if (event.isFirst() && connection != null && connection.getInFlight() > 0) {
+                // 服务端可能只是忙（例如线程池已满、暂停了读取），关闭会让在途请求全部失败，
+                // 先发送心跳再等一个空闲周期，期间收到任何数据都说明连接正常
+                IDLE_PROBES.increment();
+                connection.heartbeat();
+                return;
+            }
+            // 心跳也没有响应，连接已经失效（例如对端宕机或网络中断），主动关闭
+            IDLE_CLOSES.increment();
+            System.err.println("连接空闲超时，关闭连接：" + ctx.channel().remoteAddress());
+            ctx.close();
+        } else if (event.state() == IdleState.WRITER_IDLE) {
+            RpcConnection connection = ctx.channel().attr(RpcConnection.CONNECTION_KEY).get();
+            if (connection != null) {
+                connection.heartbeat();
+            }
+        }
     }
 
     /**
@@ -61,16 +84,11 @@ public class RpcClientHandler<T> extends SimpleChannelInboundHandler<MsgProtocol
      * @param msg   消息体
      */
     @Override
-    protected synchronized void channelRead0(ChannelHandlerContext ctx, MsgProtocol msg) {
-//        lock.lock();
-//        try {
-            this.result = ByteUtil.cast(msg.getMsg(), Object.class);
-            // 接收到服务端的请求后，唤醒 get 方法继续执行
-            this.notify();
-//            condition.signal();
-//        } finally {
-//            lock.unlock();
-//        }
+    protected void channelRead0(ChannelHandlerContext ctx, MsgProtocol msg) {
+        RpcConnection connection = ctx.channel().attr(RpcConnection.CONNECTION_KEY).get();
+        if (connection != null) {
+            connection.receive(msg);
+        }
     }
 
     @Override
@@ -78,37 +96,4 @@ public class RpcClientHandler<T> extends SimpleChannelInboundHandler<MsgProtocol
         ctx.close();
     }
 
-    /**
-     * @return  获取服务端的远程接口的处理结果
-     */
-    @Override
-    @SuppressWarnings("unchecked")
-    public synchronized T get() {
-        if (request == null) {
-            throw new IllegalArgumentException("找不到请求信息");
-        }
-        if (channel == null) {
-            throw new IllegalArgumentException("服务端未开启");
-        }
-//        lock.lock();
-        try {
-            byte[] bytes = ByteUtil.getBytes(this.request);
-            // 向服务端发送请求
-            channel.writeAndFlush(new MsgProtocol(bytes));
-            // 等待 channelRead0 响应服务端的请求结果
-            this.wait();
-//            condition.await();
-        } catch (Exception e) {
-            e.printStackTrace();
-//        } finally {
-//            lock.unlock();
-        }
-        /*
-         *  无返回值或空值使用特定对象表示，
-         *  如果方法无返回值，服务端也不回传消息，客户端就会一直阻塞在 Object.wait() 中
-         */
-        return (result instanceof Void || result instanceof Null) ? null : (T) result;
-    }
-
 }
-
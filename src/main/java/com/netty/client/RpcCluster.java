@@ -0,0 +1,339 @@
+package com.netty.client;
+
+import com.netty.loadbalance.LoadBalancer;
+import com.netty.loadbalance.LoadBalancerFactory;
+import com.netty.metrics.RpcMetrics;
+import com.netty.model.Provider;
+import com.netty.model.RequestMsg;
+import io.netty.channel.ChannelFuture;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ *
+ *  一个服务的所有提供者组成的集群，每个提供者一个连接池，
+ *  每次调用先由负载均衡按权重选出提供者，再由该提供者的连接池选出连接。
+ *  选中的提供者没有可用的连接时（例如还没有连接上），由负载均衡重新选择，都不可用时依次尝试每个提供者。
+ *  @Reference 可以指定其他负载均衡方式，每种方式在第一次使用时创建。
+ *
+ *  提供者、连接池和负载均衡组成不可变的路由表，注册中心推送变更时整体替换，
+ *  调用只读取一次路由表，替换前发出的调用仍然使用旧的路由表完成。
+ *
+ *  请求因连接断开没有发出或者被服务端拒绝执行时（RpcConnectionException 并且 sent 为 false），重新选择提供者和连接发送，
+ *  最多 failoverRetries 次，使用剩余的超时时间；已经发出的请求可能已被执行，不会重新发送。
+ *  重新发送时跳过本次调用已经失败过的提供者，由负载均衡重新选择（一致性哈希取环上的下一个提供者），
+ *  其他提供者都不可用时才换同一个提供者的另一条连接。
+ *  旧路由表中的连接池可能在发送前被关闭，选择连接时同样以 sent 为 false 的异常失败，按同样的方式重新发送
+ *  （重新发送时读取最新的路由表）
+ *
+ * @author yehuisheng
+ */
+public class RpcCluster {
+
+    /** 服务名称，用于错误信息 */
+    private final String service;
+    /** 配置文件指定的负载均衡方式 */
+    private final String loadBalance;
+    /** 根据提供者获取连接池，同一个提供者的连接池由多个服务共用 */
+    private final Function<Provider, RpcConnectionPool> poolFactory;
+    /** 换一条连接重新发送的次数 */
+    private static final LongAdder FAILOVERS = RpcMetrics.counter("client.failovers");
+
+    /** 请求没有发出时重新发送的最大次数 */
+    private final int failoverRetries;
+    /** 第一次有提供者时打开 */
+    private final CountDownLatch ready = new CountDownLatch(1);
+    private volatile Route route;
+
+    /**
+     * @param service       服务名称
+     * @param providers     服务提供者，可以为空，之后由注册中心推送
+     * @param loadBalance   配置文件指定的负载均衡方式
+     * @param failoverRetries   请求没有发出时重新发送的最大次数
+     * @param poolFactory   根据提供者获取连接池，连接在后台建立
+     */
+    RpcCluster(String service, List<Provider> providers, String loadBalance, int failoverRetries,
+               Function<Provider, RpcConnectionPool> poolFactory) {
+        this.service = service;
+        this.loadBalance = loadBalance;
+        this.failoverRetries = failoverRetries;
+        this.poolFactory = poolFactory;
+        update(providers);
+    }
+
+    /**
+     * @param providers     新的提供者列表，替换路由表，负载均衡随之重建
+     */
+    void update(List<Provider> providers) {
+        this.route = new Route(providers);
+        if (!providers.isEmpty()) {
+            ready.countDown();
+        }
+    }
+
+    /**
+     * @param timeoutMillis     最多等待的时间
+     * @return                  等待第一次有提供者，超时返回 false
+     */
+    boolean awaitProviders(long timeoutMillis) throws InterruptedException {
+        return ready.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return  当前的提供者
+     */
+    public List<Provider> getProviders() {
+        return Collections.unmodifiableList(Arrays.asList(route.providers));
+    }
+
+    /**
+     * @param request       请求对象
+     * @param timeout       超时时间（单位毫秒），0 表示不超时
+     * @param loadBalance   负载均衡方式，为空时使用配置文件指定的方式
+     * @return              按负载均衡选择提供者发送请求，返回等待服务端处理结果的 Future
+     */
+    public CompletableFuture<Object> send(RequestMsg request, long timeout, String loadBalance) {
+        Route route = this.route;
+        LoadBalancer balancer = route.balancer(loadBalance);
+        Provider provider = null;
+        CompletableFuture<Object> future;
+        try {
+            int index = route.select(balancer, request, null);
+            provider = route.providers[index];
+            future = send(route, balancer, index, request, timeout);
+        } catch (RpcConnectionException e) {
+            if (e.isSent() || failoverRetries <= 0) {
+                throw e;
+            }
+            future = CompletableFuture.failedFuture(e);
+        }
+        if (failoverRetries <= 0) {
+            return future;
+        }
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        failover(future, result, request, timeout, loadBalance, System.nanoTime(), failoverRetries, provider, null);
+        return result;
+    }
+
+    /**
+     * @param future        本次发送的 Future
+     * @param result        返回给调用方的 Future
+     * @param request       请求对象
+     * @param timeout       调用的超时时间（单位毫秒），0 表示不超时
+     * @param loadBalance   负载均衡方式
+     * @param start         第一次发送的时间，重新发送时只使用剩余的超时时间
+     * @param retries       剩余的重新发送次数
+     * @param provider      本次发送的提供者，没有选出提供者时为 null
+     * @param failed        之前已经失败的提供者，第一次失败时才创建
+     */
+    private void failover(CompletableFuture<Object> future, CompletableFuture<Object> result, RequestMsg request,
+                          long timeout, String loadBalance, long start, int retries,
+                          Provider provider, List<Provider> failed) {
+        future.whenComplete((value, error) -> {
+            if (error == null) {
+                result.complete(value);
+                return;
+            }
+            if (retries <= 0 || !(error instanceof RpcConnectionException)
+                    || ((RpcConnectionException) error).isSent()) {
+                result.completeExceptionally(error);
+                return;
+            }
+            long remaining = 0;
+            if (timeout > 0) {
+                remaining = timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                if (remaining <= 0) {
+                    result.completeExceptionally(new RpcTimeoutException("调用超时，请求未发送：" + request));
+                    return;
+                }
+            }
+            List<Provider> excluded = failed == null ? new ArrayList<>(2) : failed;
+            if (provider != null) {
+                excluded.add(provider);
+            }
+            Provider selected = null;
+            CompletableFuture<Object> next;
+            try {
+                // 读取最新的路由表，提供者用地址比较，路由表替换后仍然能跳过失败过的提供者
+                Route route = this.route;
+                LoadBalancer balancer = route.balancer(loadBalance);
+                int index = route.select(balancer, request, excluded);
+                selected = route.providers[index];
+                next = send(route, balancer, index, request, remaining);
+            } catch (RpcConnectionException e) {
+                // 选中的连接池刚好被关闭，计入重新发送的次数，下一次读取最新的路由表
+                next = CompletableFuture.failedFuture(e);
+            } catch (RuntimeException e) {
+                // 没有其他可用的连接，返回原来的异常
+                result.completeExceptionally(error);
+                return;
+            }
+            FAILOVERS.increment();
+            failover(next, result, request, timeout, loadBalance, start, retries - 1, selected, excluded);
+        });
+    }
+
+    /**
+     * @param route         本次调用读取的路由表
+     * @param balancer      选出提供者的负载均衡
+     * @param index         选出的提供者下标
+     * @param request       请求对象
+     * @param timeout       超时时间（单位毫秒），0 表示不超时
+     * @return              向选出的提供者发送一次请求
+     */
+    private CompletableFuture<Object> send(Route route, LoadBalancer balancer, int index,
+                                           RequestMsg request, long timeout) {
+        route.requests[index].increment();
+        RpcConnectionPool pool = route.pools[index];
+        if (!balancer.needsFeedback()) {
+            return pool.send(request, timeout);
+        }
+        // Future 由 IO 线程在收到响应时完成，完成回调中得到的就是这次调用的响应时间
+        long start = System.nanoTime();
+        balancer.onSend(index);
+        CompletableFuture<Object> future;
+        try {
+            future = pool.send(request, timeout);
+        } catch (RuntimeException e) {
+            balancer.onComplete(index, System.nanoTime() - start, e);
+            throw e;
+        }
+        future.whenComplete((result, error) -> balancer.onComplete(index, System.nanoTime() - start, error));
+        return future;
+    }
+
+    /**
+     * @param request       请求对象
+     * @param loadBalance   负载均衡方式，为空时使用配置文件指定的方式
+     * @return              按负载均衡选择提供者单向发送请求，返回写操作的 Future
+     */
+    public ChannelFuture sendOneWay(RequestMsg request, String loadBalance) {
+        for (int retries = failoverRetries; ; retries--) {
+            Route route = this.route;
+            int index = route.select(route.balancer(loadBalance), request, null);
+            try {
+                ChannelFuture future = route.pools[index].sendOneWay(request);
+                route.requests[index].increment();
+                return future;
+            } catch (RpcConnectionException e) {
+                // 连接池在选中之后被关闭，请求没有发出，读取最新的路由表重新选择
+                if (e.isSent() || retries <= 0) {
+                    throw e;
+                }
+                FAILOVERS.increment();
+            }
+        }
+    }
+
+    /**
+     * @return  所有提供者的在途请求数
+     */
+    public int getInFlight() {
+        int sum = 0;
+        for (RpcConnectionPool pool : route.pools) {
+            sum += pool.getInFlight();
+        }
+        return sum;
+    }
+
+    /**
+     *  不可变的路由表，负载均衡选出的下标同时是 providers 和 pools 的下标
+     */
+    private class Route {
+
+        private final Provider[] providers;
+        /** 下标与 providers 对应的连接池 */
+        private final RpcConnectionPool[] pools;
+        /** 下标与 providers 对应的调用次数 */
+        private final LongAdder[] requests;
+        /** 配置文件指定的负载均衡，没有提供者时为 null */
+        private final LoadBalancer balancer;
+        /** @Reference 指定的负载均衡，key 为负载均衡方式的名称 */
+        private final Map<String, LoadBalancer> balancers = new ConcurrentHashMap<>();
+
+        Route(List<Provider> providers) {
+            int size = providers.size();
+            this.providers = providers.toArray(new Provider[0]);
+            this.pools = new RpcConnectionPool[size];
+            this.requests = new LongAdder[size];
+            for (int i = 0; i < size; i++) {
+                pools[i] = poolFactory.apply(this.providers[i]);
+                requests[i] = RpcMetrics.counter("client.requests." + this.providers[i].getAddress());
+            }
+            this.balancer = size == 0 ? null : LoadBalancerFactory.create(loadBalance, providers);
+            if (balancer != null) {
+                balancers.put(loadBalance, balancer);
+            }
+        }
+
+        /**
+         * @param name  负载均衡方式的名称
+         * @return      该方式的负载均衡，第一次使用时创建
+         */
+        LoadBalancer balancer(String name) {
+            if (balancer == null) {
+                throw new IllegalStateException("没有可用的服务提供者：" + service);
+            }
+            if (name == null || name.isEmpty()) {
+                return balancer;
+            }
+            LoadBalancer selected = balancers.get(name);
+            if (selected == null) {
+                selected = balancers.computeIfAbsent(name,
+                        key -> LoadBalancerFactory.create(key, Arrays.asList(providers)));
+            }
+            return selected;
+        }
+
+        /**
+         * @param balancer  负载均衡
+         * @param request   请求对象
+         * @param excluded  本次调用已经失败的提供者，可以为 null
+         * @return          负载均衡选出的提供者，没有可用连接或者已经失败的提供者不参与选择，由负载均衡重新选择，
+         *                  重新选择的次数达到提供者的个数后依次检查每个提供者，
+         *                  都不可用时才选择已经失败但仍有可用连接的提供者
+         */
+        int select(LoadBalancer balancer, RequestMsg request, List<Provider> excluded) {
+            int index = balancer.select(request);
+            for (int attempt = 1; attempt <= pools.length; attempt++) {
+                if (usable(index, excluded)) {
+                    return index;
+                }
+                index = balancer.reselect(request, attempt, index);
+            }
+            for (int i = 0; i < pools.length; i++) {
+                if (usable(i, excluded)) {
+                    return i;
+                }
+            }
+            if (excluded != null) {
+                for (int i = 0; i < pools.length; i++) {
+                    if (pools[i].isActive()) {
+                        return i;
+                    }
+                }
+            }
+            throw new RpcConnectionException("服务端未开启", false, null);
+        }
+
+        /**
+         * @param index     提供者下标
+         * @param excluded  本次调用已经失败的提供者，可以为 null
+         * @return          该提供者有可用的连接，并且本次调用没有在该提供者上失败过
+         */
+        private boolean usable(int index, List<Provider> excluded) {
+            return pools[index].isActive() && (excluded == null || !excluded.contains(providers[index]));
+        }
+
+    }
+
+}
@@ -0,0 +1,517 @@
+package com.netty.client;
+
+import com.netty.code.MsgProtocol;
+import com.netty.code.MsgType;
+import com.netty.config.ConfigProperties;
+import com.netty.metrics.RpcMetrics;
+import com.netty.model.BatchRequest;
+import com.netty.model.BatchResponse;
+import com.netty.model.Null;
+import com.netty.model.RequestMsg;
+import com.netty.model.Void;
+import com.netty.serialize.Serializer;
+import com.netty.util.ObjectUtil;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.EventLoop;
+import io.netty.util.AttributeKey;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ *  客户端与服务端之间的一条连接，维护该连接上等待响应的请求。
+ *      每个请求分配一个唯一的请求ID，以请求ID为 key 将等待结果的 CompletableFuture 放入等待表中，
+ *      收到服务端的处理结果后，根据响应携带的请求ID从等待表中取出对应的 Future 并完成它。
+ *      在途请求数有上限，超过上限的请求由连接池分配到其他连接。
+ *      开启调用合并后，请求先交给 RpcBatcher，多个调用合并成一个批量请求发送，批量响应再按请求ID拆分。
+ *      建立连接后先握手获取服务端的方法签名表，之后的请求只携带方法ID和参数，握手完成前的请求仍携带完整的方法信息。
+ *      有超时时间的请求由时间轮在超时后以 RpcTimeoutException 结束，剩余的超时时间随请求发送给服务端。
+ *      第一次连接在后台进行，失败后与断开的连接一样重连，不影响客户端启动和其他服务端的连接。
+ *      连接断开后（包括心跳超时主动关闭）按指数退避加随机抖动的间隔重连，重连成功后重新握手，
+ *      关闭连接池之前会一直重连，重连期间连接不可用，连接池把请求分配给其他连接
+ *
+ * @author yehuisheng
+ */
+public class RpcConnection {
+
+    /** channel 中保存当前连接对象的属性 */
+    static final AttributeKey<RpcConnection> CONNECTION_KEY = AttributeKey.valueOf("rpcConnection");
+
+    /** 重连成功的次数 */
+    private static final LongAdder RECONNECTS = RpcMetrics.counter("client.reconnects");
+
+    private final Bootstrap bootstrap;
+    private final String host;
+    private final int port;
+    private final ConfigProperties configProperties;
+    /** 当前的 channel，重连后替换，第一次连接成功之前为 null */
+    private volatile Channel channel;
+    /** 重连后收到服务端的第一个消息之前为 false，TCP 连接建立不代表服务端进程能够处理请求 */
+    private volatile boolean ready;
+    /** 连接池关闭了当前连接，不再重连 */
+    private volatile boolean closed;
+    /** 连续重连失败的次数，决定下次重连的间隔，只在重连的回调中按顺序访问 */
+    private int reconnectAttempts;
+    /** 是否建立过连接，之后的连接都是重连，只在连接的回调中访问 */
+    private boolean connectedOnce;
+    /** 第一次连接的结果，成功为 true，失败为 false（之后在后台重连） */
+    private final CompletableFuture<Boolean> firstConnect = new CompletableFuture<>();
+    /** 当前连接使用的序列化方式 */
+    private final Serializer serializer;
+    /** 在途请求数的上限 */
+    private final int maxInFlight;
+    /** 当前的在途请求数 */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /** 等待响应的请求，key 为请求ID */
+    private final Map<Long, CompletableFuture<Object>> pendingMap = new ConcurrentHashMap<>();
+    /** 等待响应的批量请求，key 为批量请求的消息ID，value 为其中每次调用的请求ID */
+    private final Map<Long, long[]> batchMap = new ConcurrentHashMap<>();
+    /** 请求ID生成器，批量请求的消息ID也由它生成，与调用的请求ID不会重复 */
+    private final AtomicLong requestIdGenerator = new AtomicLong();
+    /** 调用合并器，未开启调用合并时为 null */
+    private final RpcBatcher batcher;
+    /** 握手时获取的方法签名和方法ID */
+    private volatile Map<String, Integer> methodIds = Collections.emptyMap();
+    /** 检查调用超时的时间轮，连接池中的所有连接共用 */
+    private final Timer timer;
+
+    /**
+     * @param bootstrap     客户端启动对象，连接和重连时使用
+     * @param host          服务端地址
+     * @param port          服务端端口
+     * @param serializer    序列化方式
+     * @param configProperties  配置信息
+     * @param timer         检查调用超时的时间轮，也用于安排重连
+     */
+    RpcConnection(Bootstrap bootstrap, String host, int port, Serializer serializer,
+                  ConfigProperties configProperties, Timer timer) {
+        // 每次连接和重连都使用同一个 EventLoop，调用合并器与 channel 始终在同一个线程中
+        EventLoop eventLoop = bootstrap.config().group().next();
+        this.bootstrap = bootstrap.clone(eventLoop);
+        this.host = host;
+        this.port = port;
+        this.serializer = serializer;
+        this.configProperties = configProperties;
+        this.timer = timer;
+        this.maxInFlight = configProperties.getMaxInFlight();
+        this.batcher = configProperties.getBatchSize() > 1
+                ? new RpcBatcher(this, eventLoop, configProperties.getBatchSize(), configProperties.getBatchDelayMicros())
+                : null;
+        // 在后台建立连接，不阻塞调用方，连接失败时按重连的间隔继续尝试，连接建立之前不可用
+        connect();
+    }
+
+    /**
+     * @param channel   新建立的 channel，绑定到当前连接并握手，断开后安排重连
+     * @param ready     是否立即可用，重连时为 false，收到握手或心跳的响应后才可用
+     */
+    private void attach(Channel channel, boolean ready) {
+        // 服务端可能已经重启，旧的方法ID不再可信，握手完成前使用完整的方法信息
+        this.methodIds = Collections.emptyMap();
+        this.ready = ready;
+        channel.attr(CONNECTION_KEY).set(this);
+        this.channel = channel;
+        channel.closeFuture().addListener(f -> scheduleReconnect());
+        if (configProperties.isMethodDictionary()) {
+            channel.writeAndFlush(new MsgProtocol(MsgType.HANDSHAKE,
+                    requestIdGenerator.incrementAndGet(), serializer.getId(), null));
+        } else if (!ready) {
+            heartbeat();
+        }
+    }
+
+    /**
+     *  按指数退避的间隔安排下一次重连，间隔在 [base/2, base] 之间随机，
+     *  同一个服务端的大量连接不会在同一时刻一起重连
+     */
+    private void scheduleReconnect() {
+        if (closed) {
+            return;
+        }
+        long delay = ObjectUtil.backoff(reconnectAttempts++,
+                configProperties.getReconnectDelay(), configProperties.getReconnectMaxDelay());
+        try {
+            timer.newTimeout(t -> connect(), delay, TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            // 客户端已经关闭，时间轮已停止
+        }
+    }
+
+    private void connect() {
+        if (closed) {
+            firstConnect.complete(false);
+            return;
+        }
+        bootstrap.connect(host, port).addListener((ChannelFuture f) -> {
+            if (!f.isSuccess()) {
+                firstConnect.complete(false);
+                scheduleReconnect();
+                return;
+            }
+            if (closed) {
+                f.channel().close();
+                return;
+            }
+            reconnectAttempts = 0;
+            if (connectedOnce) {
+                RECONNECTS.increment();
+                attach(f.channel(), false);
+                System.out.println("重新连接服务端成功：" + host + ":" + port);
+            } else {
+                // 第一次连接建立后立即可用，与启动时同步连接的行为一致
+                connectedOnce = true;
+                attach(f.channel(), true);
+                if (!firstConnect.complete(true)) {
+                    System.out.println("连接服务端成功：" + host + ":" + port);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return  第一次连接的结果，成功为 true，失败为 false
+     */
+    CompletableFuture<Boolean> firstConnect() {
+        return firstConnect;
+    }
+
+    /**
+     *  连接空闲时发送心跳，服务端回复心跳响应，一段时间内什么也没有收到说明连接已经失效
+     */
+    void heartbeat() {
+        channel.writeAndFlush(new MsgProtocol(MsgType.HEARTBEAT,
+                requestIdGenerator.incrementAndGet(), serializer.getId(), null));
+    }
+
+    /**
+     * @return  当前的在途请求数
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return  连接是否可用
+     */
+    public boolean isActive() {
+        Channel channel = this.channel;
+        return ready && channel != null && channel.isActive();
+    }
+
+    /**
+     * @return  占用一个在途请求的名额，在途请求已满则返回 false
+     */
+    boolean tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= maxInFlight) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * @param request   请求对象，调用前需要先通过 tryAcquire 占用在途请求的名额
+     * @param timeout   超时时间（单位毫秒），0 表示不超时
+     * @return          发送请求，返回等待服务端处理结果的 Future
+     */
+    CompletableFuture<Object> send(RequestMsg request, long timeout) {
+        long requestId = requestIdGenerator.incrementAndGet();
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        // 必须先放入等待表，再发送请求，否则响应可能先于放入等待表到达
+        pendingMap.put(requestId, future);
+        long deadline = 0;
+        if (timeout > 0) {
+            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            Timeout task;
+            try {
+                task = timer.newTimeout(t -> fail(requestId,
+                        new RpcTimeoutException("调用超时，" + timeout + " 毫秒内没有收到响应：" + request)),
+                        timeout, TimeUnit.MILLISECONDS);
+            } catch (IllegalStateException | RejectedExecutionException e) {
+                // 时间轮已经停止（客户端正在关闭），请求还没有发出，释放等待表和在途请求的名额
+                fail(requestId, new RpcConnectionException("客户端已经关闭，请求未发送", false, e));
+                return future;
+            }
+            // 收到响应后取消超时任务，避免时间轮中堆积已完成的任务
+            future.whenComplete((value, error) -> task.cancel());
+        }
+        setMethodId(request);
+        if (batcher != null) {
+            batcher.add(requestId, request, deadline);
+        } else {
+            write(requestId, request, deadline);
+        }
+        return future;
+    }
+
+    /**
+     * @param deadline  截止时间（System.nanoTime），0 表示不超时
+     * @return          剩余的超时时间（单位毫秒），0 表示不超时，小于 0 表示已经超时
+     */
+    private static int remaining(long deadline) {
+        if (deadline == 0) {
+            return 0;
+        }
+        long nanos = deadline - System.nanoTime();
+        if (nanos <= 0) {
+            return -1;
+        }
+        // 向上取整，不足 1 毫秒按 1 毫秒计算
+        return (int) Math.min(Integer.MAX_VALUE, (nanos + 999_999) / 1_000_000);
+    }
+
+    /**
+     * @param request   请求对象，当前连接的服务端有该方法的方法ID时，只发送方法ID
+     */
+    private void setMethodId(RequestMsg request) {
+        Integer methodId = request.getSignature() == null ? null : methodIds.get(request.getSignature());
+        request.setMethodId(methodId == null ? -1 : methodId);
+    }
+
+    /**
+     * @param requestId     请求ID
+     * @param request       请求对象，单独作为一个请求消息发送
+     * @param deadline      截止时间（System.nanoTime），0 表示不超时
+     */
+    void write(long requestId, RequestMsg request, long deadline) {
+        int timeout = remaining(deadline);
+        if (timeout < 0) {
+            // 等待发送期间已经超时，不再发送
+            fail(requestId, new RpcTimeoutException("调用超时，请求未发送：" + request));
+            return;
+        }
+        MsgProtocol msg = new MsgProtocol(MsgType.REQUEST, requestId, serializer.getId(), request);
+        msg.setTimeout(timeout);
+        // 请求对象由编码器直接序列化到发送缓冲区，序列化失败时写操作也会失败
+        Channel channel = this.channel;
+        channel.writeAndFlush(msg).addListener(f -> {
+            if (!f.isSuccess()) {
+                fail(requestId, writeFailure(channel, f.cause()));
+            }
+        });
+    }
+
+    /**
+     * @param requestIds    每次调用的请求ID
+     * @param requests      每次调用的请求对象，合并成一个批量请求消息发送
+     * @param deadline      批量请求中最晚的截止时间（System.nanoTime），0 表示不超时
+     */
+    void writeBatch(long[] requestIds, RequestMsg[] requests, long deadline) {
+        long batchId = requestIdGenerator.incrementAndGet();
+        batchMap.put(batchId, requestIds);
+        int timeout = remaining(deadline);
+        if (timeout < 0) {
+            failBatch(batchId, new RpcTimeoutException("调用超时，批量请求未发送"));
+            return;
+        }
+        MsgProtocol msg = new MsgProtocol(MsgType.BATCH_REQUEST, batchId, serializer.getId(),
+                new BatchRequest(requestIds, requests));
+        msg.setTimeout(timeout);
+        Channel channel = this.channel;
+        channel.writeAndFlush(msg).addListener(f -> {
+            if (!f.isSuccess()) {
+                failBatch(batchId, writeFailure(channel, f.cause()));
+            }
+        });
+    }
+
+    /**
+     * @param channel   写入的 channel
+     * @param cause     写操作失败的原因
+     * @return          连接不可用导致的失败转换为 RpcConnectionException，请求没有发出，可以换一条连接重新发送；
+     *                  其他原因（例如参数无法序列化）原样返回
+     */
+    private static Throwable writeFailure(Channel channel, Throwable cause) {
+        if (cause instanceof ClosedChannelException || !channel.isActive()) {
+            return new RpcConnectionException("请求发送失败，与服务端的连接已断开", false, cause);
+        }
+        return cause;
+    }
+
+    /**
+     * @param request   请求对象，调用前需要先通过 tryAcquire 占用在途请求的名额
+     * @return          单向发送请求，不等待响应，写入 socket 后即释放在途请求的名额
+     */
+    ChannelFuture sendOneWay(RequestMsg request) {
+        long requestId = requestIdGenerator.incrementAndGet();
+        setMethodId(request);
+        ChannelFuture future = channel.writeAndFlush(
+                new MsgProtocol(MsgType.ONEWAY, requestId, serializer.getId(), request));
+        future.addListener(f -> inFlight.decrementAndGet());
+        return future;
+    }
+
+    /**
+     * @param msg   服务端的响应，根据请求ID完成对应的 Future
+     */
+    void receive(MsgProtocol msg) {
+        ready = true;
+        if (msg.getType() == MsgType.HANDSHAKE_ACK) {
+            receiveHandshake(msg);
+            return;
+        }
+        if (msg.getType() == MsgType.HEARTBEAT_ACK || msg.getType() == MsgType.HEARTBEAT) {
+            // 收到任何消息都说明连接正常，心跳响应和服务端暂停读取期间主动发送的心跳不需要其他处理
+            return;
+        }
+        long[] requestIds = batchMap.remove(msg.getRequestId());
+        if (requestIds != null) {
+            receiveBatch(msg, requestIds);
+            return;
+        }
+        // 消息体已经由解码器反序列化
+        if (msg.getType() == MsgType.REJECTED) {
+            fail(msg.getRequestId(), rejected(msg));
+        } else if (msg.getError() != null) {
+            // 响应反序列化失败
+            fail(msg.getRequestId(), msg.getError());
+        } else {
+            // 服务端执行接口时抛出了异常，消息体是异常对象
+            complete(msg.getRequestId(), msg.getBody(), msg.getType() == MsgType.ERROR);
+        }
+    }
+
+    /**
+     * @param msg   握手响应，消息体是下标为方法ID的方法签名
+     */
+    private void receiveHandshake(MsgProtocol msg) {
+        if (msg.getError() != null) {
+            // 签名表反序列化失败，继续使用完整的方法信息
+            return;
+        }
+        String[] signatures = (String[]) msg.getBody();
+        Map<String, Integer> map = new HashMap<>(signatures.length * 2);
+        for (int i = 0; i < signatures.length; i++) {
+            map.put(signatures[i], i);
+        }
+        this.methodIds = map;
+    }
+
+    /**
+     * @param msg           批量响应，或者服务端无法处理批量请求时的异常响应
+     * @param requestIds    批量请求中每次调用的请求ID
+     */
+    private void receiveBatch(MsgProtocol msg, long[] requestIds) {
+        if (msg.getType() == MsgType.REJECTED || msg.getError() != null || msg.getType() == MsgType.ERROR) {
+            // 整个批量请求都失败了
+            Throwable cause = msg.getType() == MsgType.REJECTED ? rejected(msg)
+                    : msg.getError() != null ? msg.getError() : (Throwable) msg.getBody();
+            for (long requestId : requestIds) {
+                fail(requestId, cause);
+            }
+            return;
+        }
+        BatchResponse response = (BatchResponse) msg.getBody();
+        long[] responseIds = response.getRequestIds();
+        Object[] results = response.getResults();
+        boolean[] errors = response.getErrors();
+        for (int i = 0; i < responseIds.length; i++) {
+            complete(responseIds[i], results[i], errors[i]);
+        }
+    }
+
+    /**
+     * @param msg   服务端的拒绝响应
+     * @return      请求没有执行，转换为 sent 为 false 的 RpcConnectionException，由集群换一个提供者重新发送
+     */
+    private static RpcConnectionException rejected(MsgProtocol msg) {
+        return new RpcConnectionException("服务端拒绝了请求：" + msg.getBody(), false, msg.getError());
+    }
+
+    /**
+     * @param requestId     请求ID
+     * @param result        接口的返回值，或者接口抛出的异常
+     * @param error         接口是否抛出了异常
+     */
+    private void complete(long requestId, Object result, boolean error) {
+        CompletableFuture<Object> future = remove(requestId);
+        if (future == null) {
+            // 找不到等待中的请求，丢弃该响应
+            return;
+        }
+        if (error) {
+            future.completeExceptionally((Throwable) result);
+        } else {
+            // 无返回值或空值使用特定对象表示
+            future.complete((result instanceof Void || result instanceof Null) ? null : result);
+        }
+    }
+
+    /**
+     * @param cause     连接断开，等待中的请求不会再有响应，全部以异常结束
+     */
+    void failAll(Throwable cause) {
+        batchMap.clear();
+        pendingMap.keySet().forEach(requestId -> fail(requestId, cause));
+    }
+
+    private void failBatch(long batchId, Throwable cause) {
+        long[] requestIds = batchMap.remove(batchId);
+        if (requestIds != null) {
+            for (long requestId : requestIds) {
+                fail(requestId, cause);
+            }
+        }
+    }
+
+    private void fail(long requestId, Throwable cause) {
+        CompletableFuture<Object> future = remove(requestId);
+        if (future != null) {
+            future.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * @param requestId     请求ID
+     * @return              请求是否仍在等待结果，已经完成（超时或被调用方取消）的请求从等待表中移除
+     */
+    boolean isPending(long requestId) {
+        CompletableFuture<Object> future = pendingMap.get(requestId);
+        if (future == null) {
+            return false;
+        }
+        if (future.isDone()) {
+            remove(requestId);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param requestId     请求ID
+     * @return              从等待表中移除请求，并释放在途请求的名额
+     */
+    private CompletableFuture<Object> remove(long requestId) {
+        CompletableFuture<Object> future = pendingMap.remove(requestId);
+        if (future != null) {
+            inFlight.decrementAndGet();
+        }
+        return future;
+    }
+
+    void close() {
+        closed = true;
+        Channel channel = this.channel;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.netty.client;
+
+/**
+ *  连接断开、写入失败或者服务端拒绝执行导致调用失败，
+ *  sent 为 false 时请求一定没有被服务端执行，可以安全地换一条连接重新发送
+ * @author yehuisheng
+ */
+public class RpcConnectionException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** 请求是否已经写入 socket，服务端可能已经执行 */
+    private final boolean sent;
+
+    public RpcConnectionException(String message, boolean sent, Throwable cause) {
+        super(message, cause);
+        this.sent = sent;
+    }
+
+    public boolean isSent() {
+        return sent;
+    }
+
+}
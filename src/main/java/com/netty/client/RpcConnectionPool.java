@@ -0,0 +1,155 @@
+package com.netty.client;
+
+import com.netty.config.ConfigProperties;
+import com.netty.model.RequestMsg;
+import com.netty.serialize.Serializer;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.ChannelFuture;
+import io.netty.util.Timer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ *  同一个服务端的连接池，请求分配给在途请求数最少的连接，
+ *  多条 TCP 连接分布在不同的 EventLoop 上，避免单条连接和单个 IO 线程成为瓶颈。
+ *  连接在后台建立，断开的连接在后台重连，期间只选择可用的连接
+ *
+ * @author yehuisheng
+ */
+public class RpcConnectionPool {
+
+    private final List<RpcConnection> connections;
+    /** 每次选择连接时的起始下标，在途请求数相同时轮流分配，避免都挤到第一条连接上 */
+    private final AtomicInteger index = new AtomicInteger();
+
+    /**
+     * @param bootstrap     客户端启动对象
+     * @param address       服务端地址
+     * @param port          服务端端口
+     * @param serializer    序列化方式
+     * @param configProperties  配置信息，包括连接数、每条连接的在途请求数上限和调用合并的参数
+     * @param timer         检查调用超时的时间轮
+     */
+    RpcConnectionPool(Bootstrap bootstrap, String address, int port,
+                      Serializer serializer, ConfigProperties configProperties, Timer timer) {
+        int size = configProperties.getConnections();
+        if (size < 1) {
+            throw new IllegalArgumentException("连接数必须大于0");
+        }
+        List<RpcConnection> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            // 连接在后台建立，服务端暂时无法连接时不会抛出异常
+            list.add(new RpcConnection(bootstrap, address, port, serializer, configProperties, timer));
+        }
+        this.connections = list;
+    }
+
+    /**
+     * @param deadline  最晚的等待时间（System.nanoTime）
+     * @return          等待每条连接第一次连接的结果，返回连接池中是否有可用的连接
+     */
+    boolean awaitConnected(long deadline) throws InterruptedException {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[connections.size()];
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = connections.get(i).firstConnect();
+        }
+        try {
+            CompletableFuture.allOf(futures).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            // 没有在期限内完成的连接继续在后台建立
+        }
+        return isActive();
+    }
+
+    /**
+     * @param request   请求对象
+     * @param timeout   超时时间（单位毫秒），0 表示不超时
+     * @return          选择在途请求数最少的连接发送请求，返回等待服务端处理结果的 Future
+     */
+    public CompletableFuture<Object> send(RequestMsg request, long timeout) {
+        if (request == null) {
+            throw new IllegalArgumentException("找不到请求信息");
+        }
+        // 选中的连接可能被其他线程抢先占满，重新选择
+        for (int i = 0; i < connections.size(); i++) {
+            RpcConnection connection = select();
+            if (connection.tryAcquire()) {
+                return connection.send(request, timeout);
+            }
+        }
+        throw new RejectedExecutionException("连接池的在途请求已满");
+    }
+
+    /**
+     * @param request   请求对象
+     * @return          选择在途请求数最少的连接单向发送请求，返回写操作的 Future
+     */
+    public ChannelFuture sendOneWay(RequestMsg request) {
+        if (request == null) {
+            throw new IllegalArgumentException("找不到请求信息");
+        }
+        for (int i = 0; i < connections.size(); i++) {
+            RpcConnection connection = select();
+            if (connection.tryAcquire()) {
+                return connection.sendOneWay(request);
+            }
+        }
+        throw new RejectedExecutionException("连接池的在途请求已满");
+    }
+
+    /**
+     * @return  在途请求数最少的可用连接
+     */
+    private RpcConnection select() {
+        int size = connections.size();
+        int start = Math.floorMod(index.getAndIncrement(), size);
+        RpcConnection selected = null;
+        for (int i = 0; i < size; i++) {
+            RpcConnection connection = connections.get((start + i) % size);
+            if (connection.isActive()
+                    && (selected == null || connection.getInFlight() < selected.getInFlight())) {
+                selected = connection;
+            }
+        }
+        if (selected == null) {
+            // 连接全部断开，或者连接池已经随路由表的替换而关闭，请求没有发出，可以换一个提供者重新发送
+            throw new RpcConnectionException("服务端未开启", false, null);
+        }
+        return selected;
+    }
+
+    /**
+     * @return  连接池中是否有可用的连接
+     */
+    public boolean isActive() {
+        for (RpcConnection connection : connections) {
+            if (connection.isActive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return  连接池中所有连接的在途请求数
+     */
+    public int getInFlight() {
+        int sum = 0;
+        for (RpcConnection connection : connections) {
+            sum += connection.getInFlight();
+        }
+        return sum;
+    }
+
+    public void close() {
+        connections.forEach(RpcConnection::close);
+    }
+
+}
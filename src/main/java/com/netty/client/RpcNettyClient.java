@@ -2,28 +2,63 @@ package com.netty.client;
 
 import com.netty.annotation.ObjectScan;
 import com.netty.config.ConfigProperties;
+import com.netty.config.TransportType;
 import com.netty.annotation.AutoImport;
+import com.netty.annotation.OneWay;
+import com.netty.annotation.Reference;
+import com.netty.annotation.Timeout;
 import com.netty.code.ProDeCoder;
 import com.netty.code.ProEnCoder;
+import com.netty.loadbalance.LoadBalancerFactory;
+import com.netty.metrics.FlushCountHandler;
+import com.netty.metrics.RpcMetrics;
+import com.netty.model.Provider;
 import com.netty.model.RequestMsg;
+import com.netty.registry.Registry;
+import com.netty.registry.RegistryFactory;
+import com.netty.serialize.BinarySerializer;
+import com.netty.serialize.Serializer;
+import com.netty.serialize.SerializerFactory;
 import com.netty.util.ObjectUtil;
 import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  *
  *  客户端主要做两个事情：
- *      1、建立与服务端的连接
+ *      1、建立与服务端的连接，配置了多个服务提供者时，与每个提供者建立连接池，调用时按负载均衡选择提供者；
+ *        使用注册中心时，每个引用的接口订阅自己的提供者，提供者变更时更新该接口的路由，同一个提供者的连接池由多个接口共用
  *      2、给远程访问接口创建代理对象，当远程代理对象调用方法时，
  *        将当前接口的类型、方法和参数封装成 RequestMsg 对象，
- *        再由 clientHandler 对象携带数据访问服务端，获取接口的处理结果
+ *        再由 clientHandler 对象携带数据访问服务端，获取接口的处理结果。
+ *        返回 CompletableFuture 的接口方法，以及在 RpcAsync 中发起的调用，不会阻塞调用线程，
+ *        标注了 @OneWay 的无返回值方法只发送请求，不等待响应
  *
  * @author yehuisheng
  */
@@ -33,10 +68,34 @@ public class RpcNettyClient {
     @AutoImport
     private ConfigProperties configProperties;
     @AutoImport
-    private RpcClientHandler<?> clientHandler;
+    private RpcClientHandler clientHandler;
+
+    /** 单向调用发送失败的次数 */
+    private static final LongAdder ONE_WAY_FAILURES = RpcMetrics.counter("client.oneWayFailures");
+
+    /** 等待注册中心推送初始提供者的最长时间 */
+    private static final long REGISTRY_WAIT_MILLIS = 3000;
+    /** 等待新的提供者第一次连接的最长时间，超过后不再等待，连接继续在后台建立 */
+    private static final long CONNECT_WAIT_MILLIS = 3000;
+    /** 不再使用的连接池等待在途请求完成的最长时间，调用不超时的时候使用 */
+    private static final long DRAIN_MILLIS = 30_000;
 
     private EventLoopGroup eventLoopGroup;
-    private final Object lock = new Object();
+    /** 检查调用超时的时间轮，精度 10 毫秒 */
+    private HashedWheelTimer timer;
+    private Bootstrap bootstrap;
+    private Serializer serializer;
+    /** 不使用注册中心时，所有接口共用的集群 */
+    private volatile RpcCluster cluster;
+    /** 提供者地址 -> 连接池 */
+    private final Map<String, RpcConnectionPool> pools = new ConcurrentHashMap<>();
+    /** 使用注册中心时，每个接口的集群 */
+    private final Map<Class<?>, RpcCluster> clusters = new ConcurrentHashMap<>();
+    /** 创建过代理对象的接口，启动时向注册中心订阅 */
+    private final Set<Class<?>> services = ConcurrentHashMap.newKeySet();
+    private volatile Registry registry;
+    /** 在一个线程中按顺序处理注册中心的推送，建立连接不占用注册中心的 IO 线程 */
+    private ExecutorService registryExecutor;
 
     /**
      * @param clazz     获取的接口类型
@@ -44,13 +103,62 @@ public class RpcNettyClient {
      * @return          获取接口的代理对象
      */
     public <T> T getBeanInterface(Class<T> clazz) {
+        return getBeanInterface(clazz, null);
+    }
+
+    /**
+     * @param clazz     获取的接口类型
+     * @param field     使用 @Reference 注解的字段，读取字段上的 @Reference、@OneWay 等调用配置，可以为 null
+     * @param <T>       泛型
+     * @return          获取接口的代理对象
+     */
+    public <T> T getBeanInterface(Class<T> clazz, Field field) {
         if (!clazz.isInterface()) {
             throw new IllegalArgumentException("clazz不是接口类型");
         }
+        Reference reference = field == null ? null : field.getAnnotation(Reference.class);
+        boolean oneWay = field != null && field.isAnnotationPresent(OneWay.class);
+        // 超时时间：方法上的 @Timeout 优先，其次是 @Reference，最后是配置文件
+        long defaultTimeout = reference != null && reference.timeout() >= 0
+                ? reference.timeout() : configProperties.getTimeout();
+        // @Reference 指定的负载均衡方式，为空时使用配置文件指定的方式
+        String loadBalance = reference == null ? "" : reference.loadBalance();
+        if (!loadBalance.isEmpty() && !LoadBalancerFactory.isSupported(loadBalance)) {
+            throw new IllegalArgumentException("不支持的负载均衡方式：" + loadBalance);
+        }
+        // 只有一致性哈希需要路由参数，其他负载均衡方式不设置
+        boolean consistentHash = "consistentHash".equals(
+                loadBalance.isEmpty() ? configProperties.getLoadBalance() : loadBalance);
+        int hashArgument = !consistentHash ? -1 : reference == null ? 0 : reference.hashArgument();
+        services.add(clazz);
+        if (registry != null) {
+            // 客户端启动之后才创建的代理对象，立即订阅
+            subscribe(clazz);
+        }
+        // 创建代理时确定哪些方法单向调用，调用时不再解析注解
+        Set<Method> oneWayMethods = new HashSet<>();
+        // 方法签名，连接握手后据此查找方法ID
+        Map<Method, String> signatures = new HashMap<>(16);
+        // 每个方法的超时时间
+        Map<Method, Long> timeouts = new HashMap<>(16);
+        for (Method method : clazz.getMethods()) {
+            // 响应中可能按字段传输的返回值类型
+            BinarySerializer.allow(method);
+            signatures.put(method, ObjectUtil.getSignature(clazz, method.getName(), method.getParameterTypes()));
+            Timeout timeout = method.getAnnotation(Timeout.class);
+            timeouts.put(method, timeout != null ? timeout.value() : defaultTimeout);
+            boolean annotated = method.isAnnotationPresent(OneWay.class);
+            if (annotated && method.getReturnType() != void.class) {
+                throw new IllegalArgumentException("单向调用的方法不能有返回值：" + method);
+            }
+            if (annotated || (oneWay && method.getReturnType() == void.class)) {
+                oneWayMethods.add(method);
+            }
+        }
         // 通过 JDK 动态代理创建代理对象
         Object instance = Proxy.newProxyInstance(
                 Thread.currentThread().getContextClassLoader(),
-                new Class[]{clazz},
+                new Class<?>[]{clazz},
                 (proxy, method, args) -> {
                     // 设置请求对象的参数
                     RequestMsg request = new RequestMsg();
@@ -58,58 +166,261 @@ public class RpcNettyClient {
                     request.setParamsType(method.getParameterTypes());
                     request.setMethodName(method.getName());
                     request.setParams(args);
+                    request.setSignature(signatures.get(method));
+                    if (args != null && hashArgument >= 0 && hashArgument < args.length) {
+                        request.setRouteKey(args[hashArgument]);
+                    }
                     /*
-                     *  clientHandler 是共享对象，为了线程安全需要加锁。
-                     *
-                     *  这里有一个问题，clientHandler 内部使用了 synchronized + wait/notify，
-                     *  wait 的方法会释放当前线程持有的 clientHandler 对象锁，
-                     *  因此如果这里的 synchronized 对 clientHandler 对象加锁就会出现安全问题。
-                     *
-                     *  如何解决这个问题呢？
-                     *      方案一： 这里的 synchronized 不锁 clientHandler 对象
-                     *      方案二： clientHandler 对象内部的 wait/notify 换成 Lock 接口的 await/signal
+                     *  连接池中的每条连接内部以请求ID区分每一次调用，
+                     *  多个线程可以同时在同一个 channel 上发起请求，不需要再加锁串行化
                      */
-                    synchronized (lock) {
-//                    synchronized (clientHandler) {
-                        clientHandler.setRequest(request);
-                        return clientHandler.get();
+                    boolean async = RpcAsync.isAsync();
+                    if (async) {
+                        // 在发送之前检查，避免请求已经发出但 Future 无法交给调用者
+                        RpcAsync.checkCall(method, oneWayMethods.contains(method));
+                    }
+                    if (oneWayMethods.contains(method)) {
+                        // 单向调用，写入 socket 即返回，不等待服务端响应
+                        sendOneWay(request, loadBalance);
+                        return null;
                     }
+                    long timeout = timeouts.get(method);
+                    if (CompletableFuture.class.equals(method.getReturnType())) {
+                        // 接口方法本身就是异步的，直接返回 Future，由 IO 线程收到响应时完成
+                        CompletableFuture<Object> future = send(request, timeout, loadBalance);
+                        if (async) {
+                            // call 的结果就是方法的返回值，也就是这个 Future 本身
+                            RpcAsync.setFuture(CompletableFuture.completedFuture(future));
+                        }
+                        return future;
+                    }
+                    if (async) {
+                        // 在 RpcAsync 中调用，记录 Future 后立即返回
+                        RpcAsync.setFuture(send(request, timeout, loadBalance));
+                        return RpcAsync.defaultValue(method.getReturnType());
+                    }
+                    return invoke(request, timeout, loadBalance);
                 }
         );
         return clazz.cast(instance);
     }
 
+    /**
+     * @param request       请求对象
+     * @param timeout       超时时间（单位毫秒），0 表示不超时
+     * @param loadBalance   负载均衡方式，为空时使用配置文件指定的方式
+     * @return              发送请求，返回等待服务端处理结果的 Future，超时后以 RpcTimeoutException 结束
+     */
+    private CompletableFuture<Object> send(RequestMsg request, long timeout, String loadBalance) {
+        return cluster(request.getClazz()).send(request, timeout, loadBalance);
+    }
+
+    /**
+     * @param request       请求对象，单向发送，写失败时没有调用方可以通知，只记录失败次数
+     * @param loadBalance   负载均衡方式，为空时使用配置文件指定的方式
+     */
+    private void sendOneWay(RequestMsg request, String loadBalance) {
+        cluster(request.getClazz()).sendOneWay(request, loadBalance).addListener(f -> {
+            if (!f.isSuccess()) {
+                ONE_WAY_FAILURES.increment();
+                System.err.println("单向调用发送失败：" + request + "，" + f.cause());
+            }
+        });
+    }
+
+    /**
+     * @param service   接口类型
+     * @return          使用注册中心时返回该接口的集群，否则返回共用的集群
+     */
+    private RpcCluster cluster(Class<?> service) {
+        RpcCluster cluster = registry != null ? clusters.get(service) : this.cluster;
+        if (cluster == null) {
+            throw new IllegalArgumentException("服务端未开启");
+        }
+        return cluster;
+    }
+
+    /**
+     * @param service   订阅接口的提供者，推送到达时更新该接口的集群，重复订阅什么也不做
+     */
+    private synchronized void subscribe(Class<?> service) {
+        if (clusters.containsKey(service)) {
+            return;
+        }
+        RpcCluster cluster = new RpcCluster(service.getName(), Collections.emptyList(),
+                configProperties.getLoadBalance(), configProperties.getFailoverRetries(), this::pool);
+        // 先放入集群再订阅，推送处理时才能看到这个集群正在使用的连接池
+        clusters.put(service, cluster);
+        // 地址 -> 提供者，同一个地址再次加入时以新的权重替换
+        Map<String, Provider> current = new LinkedHashMap<>();
+        registry.subscribe(service.getName(), (name, added, removed) -> registryExecutor.execute(() -> {
+            removed.forEach(provider -> current.remove(provider.getAddress()));
+            added.forEach(provider -> current.put(provider.getAddress(), provider));
+            List<Provider> providers = new ArrayList<>(current.values());
+            // 新的提供者先等待第一次连接，启动后立即发起的调用才有连接可用；
+            // 暂时无法连接的提供者同样加入路由，连接建立之前选择时跳过，在后台重连
+            awaitConnected(providers);
+            cluster.update(providers);
+            closeUnusedPools();
+            System.out.println("服务提供者变更：" + name + "，当前提供者：" + providers + "。。。");
+        }));
+    }
+
+    /**
+     * @param provider  服务提供者
+     * @return          该提供者的连接池，第一次使用时在后台建立连接
+     */
+    private RpcConnectionPool pool(Provider provider) {
+        return pools.computeIfAbsent(provider.getAddress(), address -> new RpcConnectionPool(
+                bootstrap, provider.getHost(), provider.getPort(), serializer, configProperties, timer));
+    }
+
+    /**
+     * @param providers     服务提供者，创建它们的连接池，最多等待 CONNECT_WAIT_MILLIS 让连接建立，
+     *                      无法连接的提供者只打印提示，不影响其他提供者
+     */
+    private void awaitConnected(List<Provider> providers) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CONNECT_WAIT_MILLIS);
+        for (Provider provider : providers) {
+            try {
+                if (!pool(provider).awaitConnected(deadline)) {
+                    System.err.println("服务提供者暂时无法连接，在后台重连：" + provider.getAddress() + "。。。");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     *  关闭不再被任何接口使用的连接池，只在处理推送的线程中调用。
+     *  连接池先从 pools 中移除，新的路由表不会再使用它；替换前读取了旧路由表的调用可能仍在使用，
+     *  等在途请求完成（最多等待一个调用超时时间）后再关闭，不影响已经发出的请求
+     */
+    private void closeUnusedPools() {
+        Set<String> used = new HashSet<>();
+        for (RpcCluster cluster : clusters.values()) {
+            for (Provider provider : cluster.getProviders()) {
+                used.add(provider.getAddress());
+            }
+        }
+        long timeout = configProperties.getTimeout() > 0 ? configProperties.getTimeout() : DRAIN_MILLIS;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        pools.entrySet().removeIf(entry -> {
+            if (used.contains(entry.getKey())) {
+                return false;
+            }
+            closeWhenIdle(entry.getValue(), deadline);
+            return true;
+        });
+    }
+
+    /**
+     * @param pool      不再使用的连接池
+     * @param deadline  最晚的关闭时间（System.nanoTime）
+     */
+    private void closeWhenIdle(RpcConnectionPool pool, long deadline) {
+        if (pool.getInFlight() == 0 || System.nanoTime() - deadline >= 0) {
+            pool.close();
+            return;
+        }
+        try {
+            timer.newTimeout(t -> closeWhenIdle(pool, deadline), 100, TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            // 客户端已经关闭，时间轮已停止
+            pool.close();
+        }
+    }
+
+    /**
+     * @param request       请求对象
+     * @param timeout       超时时间（单位毫秒），0 表示不超时
+     * @param loadBalance   负载均衡方式，为空时使用配置文件指定的方式
+     * @return              获取服务端的远程接口的处理结果，当前线程会阻塞直到响应到达或者超时
+     */
+    private Object invoke(RequestMsg request, long timeout, String loadBalance) throws Throwable {
+        try {
+            return send(request, timeout, loadBalance).get();
+        } catch (ExecutionException e) {
+            // 抛出服务端或连接的原始异常
+            throw e.getCause();
+        }
+    }
+
     /**
      *  开启客户端，连接 netty 服务器
      */
     public void start() {
-        eventLoopGroup = new NioEventLoopGroup();
+        // 根据配置选择 epoll 或 NIO 传输
+        TransportType transport = TransportType.of(configProperties.getTransport());
+        eventLoopGroup = transport.newEventLoopGroup(0);
+        timer = new HashedWheelTimer(new DefaultThreadFactory("rpc-timeout", true), 10, TimeUnit.MILLISECONDS);
         try {
-            Bootstrap bootstrap = new Bootstrap()
+            bootstrap = new Bootstrap()
                     // 设置线程池
                     .group(eventLoopGroup)
-                    // 设置 NIO 通道
-                    .channel(NioSocketChannel.class)
+                    // 设置通道
+                    .channel(transport.socketChannel())
                     .handler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel socketChannel) {
                             // 添加编解码器和自定义业务处理器
                             ChannelPipeline pipeline = socketChannel.pipeline();
-                            pipeline.addLast(new ProDeCoder())
-                                    .addLast(new ProEnCoder())
+                            // 统计刷新次数的 handler 放在最前面，只统计真正到达 socket 的刷新
+                            pipeline.addLast(FlushCountHandler.INSTANCE);
+                            if (configProperties.isFlushConsolidation()) {
+                                // 读事件中产生的刷新推迟到本轮读取结束，其他线程的刷新合并成 EventLoop 的一个任务
+                                pipeline.addLast(new FlushConsolidationHandler(
+                                        configProperties.getFlushConsolidationLimit(), true));
+                            }
+                            if (configProperties.getHeartbeatInterval() > 0 || configProperties.getIdleTimeout() > 0) {
+                                // 写空闲时发送心跳，读空闲时关闭连接，由 RpcClientHandler 处理空闲事件
+                                pipeline.addLast(new IdleStateHandler(configProperties.getIdleTimeout(),
+                                        configProperties.getHeartbeatInterval(), 0, TimeUnit.MILLISECONDS));
+                            }
+                            pipeline.addLast(new ProDeCoder(configProperties.getMaxFrameLength()))
+                                    .addLast(new ProEnCoder(configProperties.getCompressThreshold()))
                                     .addLast(clientHandler);
                         }
                     });
+            if (transport == TransportType.EPOLL && configProperties.isTcpQuickAck()) {
+                bootstrap.option(EpollChannelOption.TCP_QUICKACK, true);
+            }
 
+            serializer = SerializerFactory.get(configProperties.getSerializer());
 
-            System.out.println("连接远程服务成功。。。");
-            // 绑定服务器地址和端口号
-            ChannelFuture channelFuture = bootstrap.connect(configProperties.getAddress(), configProperties.getPort());
+            Registry registry = RegistryFactory.create(configProperties.getRegistry(),
+                    configProperties.getRegistryAddress(),
+                    configProperties.getReconnectDelay(), configProperties.getReconnectMaxDelay());
+            if (registry != null) {
+                registryExecutor = Executors.newSingleThreadExecutor(
+                        new DefaultThreadFactory("rpc-registry", true));
+                this.registry = registry;
+                for (Class<?> service : services) {
+                    subscribe(service);
+                }
+                // 等待注册中心推送初始的提供者，启动后立即发起的调用才有提供者可选
+                for (Map.Entry<Class<?>, RpcCluster> entry : clusters.entrySet()) {
+                    if (!entry.getValue().awaitProviders(REGISTRY_WAIT_MILLIS)) {
+                        System.err.println("注册中心没有该接口的提供者：" + entry.getKey().getName() + "。。。");
+                    }
+                }
+                System.out.println("连接注册中心成功，传输方式：" + transport
+                        + "，注册中心：" + configProperties.getRegistry() + "。。。");
+                return;
+            }
 
-            // 不阻塞客户端
-            channelFuture.sync();
-            // 阻塞客户端
-//            channelFuture.channel().closeFuture().sync();
+            // 没有配置提供者列表时，只连接 address 和 port
+            List<Provider> providers = Provider.parse(configProperties.getProviders());
+            if (providers.isEmpty()) {
+                providers = List.of(new Provider(configProperties.getAddress(), configProperties.getPort(), 1));
+            }
+            // 与每个提供者建立多条连接，连接在后台建立，部分提供者无法连接时客户端照常启动
+            awaitConnected(providers);
+            cluster = new RpcCluster("", providers, configProperties.getLoadBalance(),
+                    configProperties.getFailoverRetries(), this::pool);
+            System.out.println("连接远程服务成功，传输方式：" + transport + "，服务提供者：" + providers + "。。。");
 
         } catch (Throwable e) {
             e.printStackTrace();
@@ -119,6 +430,16 @@ public class RpcNettyClient {
 
     public void close() {
         boolean success = false;
+        if (registry != null) {
+            registry.close();
+        }
+        if (registryExecutor != null) {
+            registryExecutor.shutdownNow();
+        }
+        pools.values().forEach(RpcConnectionPool::close);
+        if (timer != null) {
+            timer.stop();
+        }
         if (ObjectUtil.canShutdownThreadPool(eventLoopGroup)) {
             eventLoopGroup.shutdownGracefully();
             success = true;
@@ -0,0 +1,15 @@
+package com.netty.client;
+
+/**
+ *  远程调用超过超时时间仍未收到响应
+ * @author yehuisheng
+ */
+public class RpcTimeoutException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RpcTimeoutException(String message) {
+        super(message);
+    }
+
+}
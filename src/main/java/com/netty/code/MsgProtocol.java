@@ -1,36 +1,151 @@
 package com.netty.code;
 
 /**
- *  自定义协议格式
+ *  自定义协议格式，协议头固定 18 个字节：
+ *
+ *  +--------+---------+------+------------+-------+------------+--------+
+ *  | 魔数 2  | 版本 1   | 类型 1 | 序列化方式 1 | 标志 1 | 请求ID 8    | 长度 4  |
+ *  +--------+---------+------+------------+-------+------------+--------+
+ *  |                          消息体（长度个字节）                           |
+ *  +---------------------------------------------------------------------+
+ *
+ *  设置了 FLAG_TIMEOUT 标志时，长度之后先是 4 个字节的剩余超时时间（毫秒），再是消息体，长度包括这 4 个字节。
+ *  超时时间使用相对值，通信双方的时钟不需要同步，接收方以收到消息的时间加上剩余时间作为截止时间
+ *
+ *  消息体以 Java 对象的形式在 pipeline 中传递，
+ *  编码器直接把对象序列化到发送缓冲区，解码器直接从接收缓冲区反序列化，中间不产生字节数组
+ *
  * @author yehuisheng
  */
 public class MsgProtocol {
 
+    /** 魔数，用于识别协议和发现错乱的数据流 */
+    public static final short MAGIC = (short) 0xCAFE;
+    /** 协议版本 */
+    public static final byte VERSION = 1;
+    /** 协议头的长度 */
+    public static final int HEADER_LENGTH = 18;
+    /** 标志位：消息体已压缩，压缩后的消息体为 原始长度 4 个字节 + deflate 数据 */
+    public static final byte FLAG_COMPRESSED = 0x01;
+    /** 标志位：发送方可以接收压缩的消息体，收到过该标志的连接才会压缩发送给对方的消息 */
+    public static final byte FLAG_ACCEPT_COMPRESSED = 0x02;
+    /** 标志位：协议头之后带有 4 个字节的剩余超时时间 */
+    public static final byte FLAG_TIMEOUT = 0x04;
+
+    /** 消息类型 */
+    private MsgType type;
+    /** 标志位 */
+    private byte flags;
+    /** 消息体序列化后的长度，只在解码时记录 */
     private int length;
-    private byte[] msg;
+    /** 请求ID，响应会带回同一个ID，客户端据此匹配等待中的调用 */
+    private long requestId;
+    /** 消息体使用的序列化方式的编号 */
+    private byte serializer;
+    /** 消息体 */
+    private Object body;
+    /** 解码时消息体反序列化失败的原因 */
+    private Throwable error;
+    /** 剩余的超时时间（单位毫秒），0 表示不超时 */
+    private int timeout;
+    /** 接收方的截止时间（System.nanoTime），只在解码时根据剩余的超时时间计算，timeout 为 0 时无意义 */
+    private long deadline;
+
+    public MsgType getType() {
+        return type;
+    }
+
+    public byte getFlags() {
+        return flags;
+    }
 
     public int getLength() {
         return length;
     }
 
-    public byte[] getMsg() {
-        return msg;
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public byte getSerializer() {
+        return serializer;
+    }
+
+    public Object getBody() {
+        return body;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public void setType(MsgType type) {
+        this.type = type;
+    }
+
+    public void setFlags(byte flags) {
+        this.flags = flags;
     }
 
     public void setLength(int length) {
         this.length = length;
     }
 
-    public void setMsg(byte[] msg) {
-        this.msg = msg;
+    public void setRequestId(long requestId) {
+        this.requestId = requestId;
+    }
+
+    public void setSerializer(byte serializer) {
+        this.serializer = serializer;
+    }
+
+    public void setBody(Object body) {
+        this.body = body;
+    }
+
+    public void setError(Throwable error) {
+        this.error = error;
+    }
+
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return  请求是否已经超过截止时间，调用方已经不再等待结果
+     */
+    public boolean isExpired() {
+        return timeout > 0 && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * @param flag  标志位
+     * @return      是否设置了该标志位
+     */
+    public boolean hasFlag(byte flag) {
+        return (flags & flag) != 0;
     }
 
     public MsgProtocol() {
     }
 
-    public MsgProtocol(byte[] msg) {
-        this.msg = msg;
-        this.length = msg.length;
+    public MsgProtocol(MsgType type, long requestId, byte serializer, Object body) {
+        this.type = type;
+        this.requestId = requestId;
+        this.serializer = serializer;
+        this.body = body;
     }
 
 
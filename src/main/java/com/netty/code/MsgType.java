@@ -0,0 +1,59 @@
+package com.netty.code;
+
+/**
+ *  消息类型，写在协议头中，通信双方据此区分请求、响应、异常等消息
+ * @author yehuisheng
+ */
+public enum MsgType {
+
+    /** 请求，需要响应 */
+    REQUEST((byte) 1),
+    /** 正常响应 */
+    RESPONSE((byte) 2),
+    /** 异常响应，消息体是异常对象 */
+    ERROR((byte) 3),
+    /** 单向请求，不需要响应 */
+    ONEWAY((byte) 4),
+    /** 心跳请求 */
+    HEARTBEAT((byte) 5),
+    /** 心跳响应 */
+    HEARTBEAT_ACK((byte) 6),
+    /** 批量请求，消息体是 BatchRequest，一个消息携带多次调用 */
+    BATCH_REQUEST((byte) 7),
+    /** 批量响应，消息体是 BatchResponse，客户端按请求ID拆分给每次调用 */
+    BATCH_RESPONSE((byte) 8),
+    /** 握手请求，客户端建立连接后发送，获取服务端的方法签名表 */
+    HANDSHAKE((byte) 9),
+    /** 握手响应，消息体是下标为方法ID的方法签名数组 */
+    HANDSHAKE_ACK((byte) 10),
+    /** 拒绝响应，服务端超过并发限制或线程池已满，请求没有执行，消息体是拒绝的原因，客户端可以换一个提供者重新发送 */
+    REJECTED((byte) 11);
+
+    /** 下标为消息类型的编号 */
+    private static final MsgType[] TYPES = new MsgType[128];
+
+    static {
+        for (MsgType type : values()) {
+            TYPES[type.code] = type;
+        }
+    }
+
+    private final byte code;
+
+    MsgType(byte code) {
+        this.code = code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * @param code  消息类型的编号
+     * @return      根据编号获取消息类型，无法识别则返回 null
+     */
+    public static MsgType valueOf(byte code) {
+        return code < 0 ? null : TYPES[code];
+    }
+
+}
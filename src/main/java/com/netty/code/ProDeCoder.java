@@ -1,34 +1,191 @@
 package com.netty.code;
 
-import com.netty.model.Void;
+import com.netty.metrics.RpcMetrics;
+import com.netty.serialize.SerializerFactory;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.ReplayingDecoder;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 /**
+ *
+ *  解码器，按协议头中的长度字段切分消息。
+ *      ByteToMessageDecoder 会把收到的数据累积在缓冲区中，消息不完整时直接返回，等待更多的数据，
+ *      不像 ReplayingDecoder 那样每次都从头重新执行解码。
+ *      协议头到达后就校验魔数、版本和长度，超过上限的消息立即拒绝并关闭连接，不会等待或分配消息体。
+ *      压缩的消息体先解压再反序列化，解压后的长度同样不能超过上限
+ *
  * @author yehuisheng
  */
-public class ProDeCoder extends ReplayingDecoder<Void> {
+public class ProDeCoder extends ByteToMessageDecoder {
+
+    /** 消息不完整，需要等待更多数据的次数 */
+    private static final LongAdder PARTIAL_FRAME_WAITS = RpcMetrics.counter("decoder.partialFrameWaits");
+    /** 消息长度超过上限而被拒绝的次数 */
+    private static final LongAdder OVERSIZE_FRAMES = RpcMetrics.counter("decoder.oversizeFrames");
+    /** 解码的消息数 */
+    private static final LongAdder DECODED_FRAMES = RpcMetrics.counter("decoder.frames");
+    /** 解压的消息体解压前的字节数 */
+    private static final LongAdder INFLATE_COMPRESSED_BYTES = RpcMetrics.counter("decompress.compressedBytes");
+    /** 解压的消息体解压后的字节数 */
+    private static final LongAdder INFLATE_RAW_BYTES = RpcMetrics.counter("decompress.rawBytes");
+
+    /** 消息体长度的上限，解压后的长度同样受该上限限制 */
+    private final int maxFrameLength;
+    /** 解压器，解码器只在 channel 的 EventLoop 中执行，每个解码器复用一个 */
+    private Inflater inflater;
+    /** 是否已经收到对端可以接收压缩的标志 */
+    private boolean peerAcceptCompressed;
+
+    /**
+     * @param maxFrameLength    消息体长度的上限
+     */
+    public ProDeCoder(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
 
     /**
      *  解码器 - 从字节流的缓冲区中解析通信节点发送过来的数据
      */
     @Override
     protected void decode(ChannelHandlerContext channelHandlerContext, ByteBuf byteBuf, List<Object> list) {
-        // 获取数据长度
-        int length = byteBuf.readInt();
-        // 建立缓存区
-        byte[] bytes = new byte[length];
-        // 正确读取数据到缓冲区中
-        byteBuf.readBytes(bytes);
+        if (byteBuf.readableBytes() < MsgProtocol.HEADER_LENGTH) {
+            // 协议头还没有完整到达
+            PARTIAL_FRAME_WAITS.increment();
+            return;
+        }
+        int start = byteBuf.readerIndex();
+        // 校验魔数和版本，不一致说明数据流已经错乱或者不是本协议的数据，抛出异常后连接会被关闭
+        short magic = byteBuf.getShort(start);
+        if (magic != MsgProtocol.MAGIC) {
+            byteBuf.skipBytes(byteBuf.readableBytes());
+            throw new CorruptedFrameException("魔数错误：" + Integer.toHexString(magic & 0xFFFF));
+        }
+        byte version = byteBuf.getByte(start + 2);
+        if (version != MsgProtocol.VERSION) {
+            byteBuf.skipBytes(byteBuf.readableBytes());
+            throw new CorruptedFrameException("不支持的协议版本：" + version);
+        }
+        // 获取数据长度，在消息体到达之前就拒绝过长的消息
+        int length = byteBuf.getInt(start + MsgProtocol.HEADER_LENGTH - 4);
+        if (length < 0 || length > maxFrameLength) {
+            OVERSIZE_FRAMES.increment();
+            byteBuf.skipBytes(byteBuf.readableBytes());
+            throw new TooLongFrameException("消息长度" + length + "超过上限" + maxFrameLength);
+        }
+        if (byteBuf.readableBytes() < MsgProtocol.HEADER_LENGTH + length) {
+            // 消息体还没有完整到达
+            PARTIAL_FRAME_WAITS.increment();
+            return;
+        }
+
+        byteBuf.skipBytes(3);
+        MsgType type = MsgType.valueOf(byteBuf.readByte());
+        if (type == null) {
+            byteBuf.skipBytes(byteBuf.readableBytes());
+            throw new CorruptedFrameException("无法识别的消息类型");
+        }
+        // 获取序列化方式
+        byte serializer = byteBuf.readByte();
+        byte flags = byteBuf.readByte();
+        // 获取请求ID
+        long requestId = byteBuf.readLong();
+        byteBuf.skipBytes(4);
+        // 消息体是接收缓冲区的切片，不复制数据
+        ByteBuf body = byteBuf.readSlice(length);
+        DECODED_FRAMES.increment();
+        if (!peerAcceptCompressed && (flags & MsgProtocol.FLAG_ACCEPT_COMPRESSED) != 0) {
+            // 对端开启了压缩，编码器之后可以压缩发给对端的消息
+            peerAcceptCompressed = true;
+            channelHandlerContext.channel().attr(ProEnCoder.PEER_ACCEPT_COMPRESSED).set(Boolean.TRUE);
+        }
         /*
          *  将解码的数据通过 pipeline 调用链给下一个处理器
          */
         MsgProtocol protocol = new MsgProtocol();
+        protocol.setType(type);
+        protocol.setFlags(flags);
         protocol.setLength(length);
-        protocol.setMsg(bytes);
+        protocol.setRequestId(requestId);
+        protocol.setSerializer(serializer);
+        if ((flags & MsgProtocol.FLAG_TIMEOUT) != 0) {
+            if (body.readableBytes() < 4) {
+                throw new CorruptedFrameException("消息缺少超时时间");
+            }
+            // 以收到消息的时间计算截止时间，不依赖对端的时钟
+            int timeout = body.readInt();
+            protocol.setTimeout(timeout);
+            protocol.setDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+        }
+        ByteBuf raw = null;
+        try {
+            if ((flags & MsgProtocol.FLAG_COMPRESSED) != 0) {
+                raw = inflate(channelHandlerContext, body);
+                body = raw;
+            }
+            // 直接从切片中反序列化
+            protocol.setBody(SerializerFactory.get(serializer).deserialize(body, Object.class));
+        } catch (RuntimeException e) {
+            // 反序列化失败只影响当前这一条消息，交给处理器回传或抛出异常，不关闭连接
+            protocol.setError(e);
+        } finally {
+            if (raw != null) {
+                raw.release();
+            }
+        }
         list.add(protocol);
     }
 
+    /**
+     * @param ctx   channel上下文对象
+     * @param body  压缩的消息体：原始长度 4 个字节 + deflate 数据
+     * @return      解压到新分配的缓冲区中，由调用方释放
+     */
+    private ByteBuf inflate(ChannelHandlerContext ctx, ByteBuf body) {
+        int compressedLength = body.readableBytes();
+        int rawLength = body.readInt();
+        if (rawLength < 0 || rawLength > maxFrameLength) {
+            // 先检查原始长度，防止解压出超大的数据
+            throw new IllegalArgumentException("解压后的消息长度" + rawLength + "超过上限" + maxFrameLength);
+        }
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        ByteBuf raw = ctx.alloc().buffer(rawLength, rawLength);
+        try {
+            inflater.setInput(body.nioBuffer());
+            int n = inflater.inflate(raw.nioBuffer(0, rawLength));
+            if (n != rawLength || !inflater.finished()) {
+                throw new IllegalArgumentException("消息体解压失败，长度不一致");
+            }
+            raw.writerIndex(rawLength);
+            INFLATE_COMPRESSED_BYTES.add(compressedLength);
+            INFLATE_RAW_BYTES.add(rawLength);
+            return raw;
+        } catch (DataFormatException e) {
+            raw.release();
+            throw new IllegalArgumentException("消息体解压失败，" + e.getMessage(), e);
+        } catch (RuntimeException e) {
+            raw.release();
+            throw e;
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) {
+        // 释放解压器占用的本地内存
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
 }
@@ -1,21 +1,128 @@
 package com.netty.code;
 
+import com.netty.metrics.RpcMetrics;
+import com.netty.serialize.SerializerFactory;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.util.AttributeKey;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
 
 /**
  * @author yehuisheng
  */
 public class ProEnCoder extends MessageToByteEncoder<MsgProtocol> {
 
+    /** channel 的对端是否可以接收压缩的消息体，由解码器收到对端的标志后设置 */
+    static final AttributeKey<Boolean> PEER_ACCEPT_COMPRESSED = AttributeKey.valueOf("peerAcceptCompressed");
+
+    /** 被压缩的消息体压缩前的字节数 */
+    private static final LongAdder RAW_BYTES = RpcMetrics.counter("compress.rawBytes");
+    /** 被压缩的消息体压缩后的字节数 */
+    private static final LongAdder COMPRESSED_BYTES = RpcMetrics.counter("compress.compressedBytes");
+    /** 超过阈值但压缩后没有变小，按原样发送的消息数 */
+    private static final LongAdder SKIPPED = RpcMetrics.counter("compress.skipped");
+
+    /** 消息体超过该长度才压缩，小于等于 0 表示不压缩 */
+    private final int compressThreshold;
+    /** 压缩器，编码器只在 channel 的 EventLoop 中执行，每个编码器复用一个 */
+    private Deflater deflater;
+
+    public ProEnCoder() {
+        this(0);
+    }
+
+    /**
+     * @param compressThreshold     消息体超过该长度才压缩，小于等于 0 表示不压缩
+     */
+    public ProEnCoder(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
     /**
-     *  编码器 - 将数据的长度放入缓冲区中，发送给通信的节点
+     *  编码器 - 写入协议头，再将消息体序列化到缓冲区中，发送给通信的节点。
+     *      缓冲区由 netty 从内存池中分配（默认是直接内存），消息体直接序列化到缓冲区中，
+     *      协议头的长度先写入占位，序列化完成后再回填实际长度，有超时时间的消息在消息体之前写入剩余的超时时间。
+     *      开启压缩后，每个消息都带上可以接收压缩的标志，对端也开启了压缩时，超过阈值的消息体才压缩
      */
     @Override
     protected void encode(ChannelHandlerContext channelHandlerContext, MsgProtocol msgProtocol, ByteBuf byteBuf) {
-        byteBuf.writeInt(msgProtocol.getLength());
-        byteBuf.writeBytes(msgProtocol.getMsg());
+        boolean compress = compressThreshold > 0;
+        byte flags = compress
+                ? (byte) (msgProtocol.getFlags() | MsgProtocol.FLAG_ACCEPT_COMPRESSED)
+                : msgProtocol.getFlags();
+        if (msgProtocol.getTimeout() > 0) {
+            flags |= MsgProtocol.FLAG_TIMEOUT;
+        }
+        byteBuf.writeShort(MsgProtocol.MAGIC);
+        byteBuf.writeByte(MsgProtocol.VERSION);
+        byteBuf.writeByte(msgProtocol.getType().getCode());
+        byteBuf.writeByte(msgProtocol.getSerializer());
+        int flagsIndex = byteBuf.writerIndex();
+        byteBuf.writeByte(flags);
+        byteBuf.writeLong(msgProtocol.getRequestId());
+        int lengthIndex = byteBuf.writerIndex();
+        byteBuf.writeInt(0);
+        if (msgProtocol.getTimeout() > 0) {
+            byteBuf.writeInt(msgProtocol.getTimeout());
+        }
+        int bodyIndex = byteBuf.writerIndex();
+        SerializerFactory.get(msgProtocol.getSerializer()).serialize(msgProtocol.getBody(), byteBuf);
+        int bodyLength = byteBuf.writerIndex() - bodyIndex;
+        if (compress && bodyLength > compressThreshold
+                && channelHandlerContext.channel().hasAttr(PEER_ACCEPT_COMPRESSED)
+                && compress(channelHandlerContext, byteBuf, bodyIndex, bodyLength)) {
+            byteBuf.setByte(flagsIndex, flags | MsgProtocol.FLAG_COMPRESSED);
+        }
+        byteBuf.setInt(lengthIndex, byteBuf.writerIndex() - lengthIndex - 4);
+    }
+
+    /**
+     *  压缩缓冲区中的消息体，压缩后没有变小则保持原样
+     * @param ctx           channel上下文对象
+     * @param byteBuf       发送缓冲区
+     * @param bodyIndex     消息体的起始下标
+     * @param bodyLength    消息体的长度
+     * @return              消息体是否已替换为压缩后的数据
+     */
+    private boolean compress(ChannelHandlerContext ctx, ByteBuf byteBuf, int bodyIndex, int bodyLength) {
+        if (bodyLength <= 8) {
+            // 太短的消息体压缩后不可能变小
+            return false;
+        }
+        if (deflater == null) {
+            deflater = new Deflater();
+        }
+        // 压缩后的数据不小于原始长度就没有意义，输出缓冲区只分配原始长度
+        ByteBuf compressed = ctx.alloc().buffer(bodyLength, bodyLength);
+        try {
+            compressed.writeInt(bodyLength);
+            deflater.setInput(byteBuf.nioBuffer(bodyIndex, bodyLength));
+            deflater.finish();
+            int n = deflater.deflate(compressed.nioBuffer(4, bodyLength - 4));
+            if (!deflater.finished() || 4 + n >= bodyLength) {
+                SKIPPED.increment();
+                return false;
+            }
+            byteBuf.writerIndex(bodyIndex);
+            byteBuf.writeBytes(compressed, 0, 4 + n);
+            RAW_BYTES.add(bodyLength);
+            COMPRESSED_BYTES.add(4 + n);
+            return true;
+        } finally {
+            deflater.reset();
+            compressed.release();
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        // 释放压缩器占用的本地内存
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
     }
 
 }
@@ -22,6 +22,72 @@ public class ConfigProperties {
     private String address;
     /** 端口 */
     private int port;
+    /** 客户端与每个服务端建立的连接数 */
+    private int connections;
+    /** 客户端每条连接的在途请求数上限 */
+    private int maxInFlight;
+    /** 客户端使用的序列化方式 */
+    private String serializer;
+    /** 消息体长度的上限（单位字节） */
+    private int maxFrameLength;
+    /** 是否合并刷新操作，多个消息只触发一次系统调用 */
+    private boolean flushConsolidation;
+    /** 合并刷新时，最多累积多少次刷新后强制刷新 */
+    private int flushConsolidationLimit;
+    /** 网络传输方式：auto、nio、epoll */
+    private String transport;
+    /** 使用 epoll 传输时是否开启 TCP_QUICKACK，立即回复 ACK 而不是延迟确认 */
+    private boolean tcpQuickAck;
+    /** 服务端监听同一端口的 channel 数量，大于 1 时使用 SO_REUSEPORT，需要 epoll 传输 */
+    private int acceptors;
+    /** 客户端合并调用时，一个批量请求最多包含的调用数，小于等于 1 表示不合并 */
+    private int batchSize;
+    /** 客户端合并调用时，等待更多调用加入的时间（单位微秒） */
+    private int batchDelayMicros;
+    /** 消息体超过该长度（单位字节）才压缩，小于等于 0 表示不压缩，通信双方都开启时才会压缩 */
+    private int compressThreshold;
+    /** 客户端建立连接后是否握手获取方法ID，之后的请求只携带方法ID和参数 */
+    private boolean methodDictionary;
+    /** 客户端调用的默认超时时间（单位毫秒），0 表示不超时 */
+    private int timeout;
+    /** 服务端执行接口方法的线程数，小于等于 0 表示使用 CPU 核数 */
+    private int serverThreads;
+    /** 服务端线程池的队列长度，队列积压时暂停读取，队列已满时拒绝请求 */
+    private int serverQueueSize;
+    /** 服务端执行接口方法的线程类型：platform、virtual */
+    private String serverExecutor;
+    /** 客户端 RpcThreadPool 执行任务的线程类型：platform、virtual */
+    private String clientExecutor;
+    /** 服务端的自适应并发限制：none、global、service */
+    private String concurrencyLimit;
+    /** 自适应并发限制的初始值 */
+    private int concurrencyLimitInitial;
+    /** 自适应并发限制的下限 */
+    private int concurrencyLimitMin;
+    /** 自适应并发限制的上限 */
+    private int concurrencyLimitMax;
+    /** 客户端的服务提供者列表，格式为 host:port[:weight]，逗号分隔，为空时使用 address 和 port */
+    private String providers;
+    /** 客户端在多个提供者之间的负载均衡方式 */
+    private String loadBalance;
+    /** 注册中心的类型：none、local、socket */
+    private String registry;
+    /** socket 注册中心的地址，格式为 host:port */
+    private String registryAddress;
+    /** 服务端是否在 registryAddress 的端口上内嵌启动 socket 注册中心 */
+    private boolean registryServer;
+    /** 服务端注册到注册中心的权重 */
+    private int providerWeight;
+    /** 客户端连接没有写出数据多久后发送心跳（单位毫秒），0 表示不发送心跳 */
+    private int heartbeatInterval;
+    /** 连接多久没有读到任何数据视为失效并关闭（单位毫秒），0 表示不检测 */
+    private int idleTimeout;
+    /** 客户端第一次重连的间隔（单位毫秒），之后每次失败翻倍 */
+    private int reconnectDelay;
+    /** 客户端重连间隔的上限（单位毫秒） */
+    private int reconnectMaxDelay;
+    /** 请求因连接断开没有发出时，换一条连接重新发送的最大次数 */
+    private int failoverRetries;
 
     /**
      *  加载配置文件
@@ -53,8 +119,62 @@ public class ConfigProperties {
     private void refreshContext() {
         this.address = temple("address", "127.0.0.1", String.class);
         this.port = temple("port", 9999, Integer.class);
+        this.connections = temple("connections", 1, Integer.class);
+        this.maxInFlight = temple("maxInFlight", 1024, Integer.class);
+        this.serializer = temple("serializer", "binary", String.class);
+        this.maxFrameLength = temple("maxFrameLength", 8 * 1024 * 1024, Integer.class);
+        this.flushConsolidation = temple("flushConsolidation", false, Boolean.class);
+        this.flushConsolidationLimit = temple("flushConsolidationLimit", 256, Integer.class);
+        this.transport = temple("transport", "auto", String.class);
+        this.tcpQuickAck = temple("tcpQuickAck", false, Boolean.class);
+        this.acceptors = temple("acceptors", 1, Integer.class);
+        this.batchSize = temple("batchSize", 1, Integer.class);
+        this.batchDelayMicros = temple("batchDelayMicros", 0, Integer.class);
+        this.compressThreshold = temple("compressThreshold", 0, Integer.class);
+        this.methodDictionary = temple("methodDictionary", true, Boolean.class);
+        this.timeout = temple("timeout", 5000, Integer.class);
+        this.serverThreads = temple("serverThreads", 0, Integer.class);
+        this.serverQueueSize = temple("serverQueueSize", 1024, Integer.class);
+        this.serverExecutor = temple("serverExecutor", "platform", String.class);
+        this.clientExecutor = temple("clientExecutor", "platform", String.class);
+        this.concurrencyLimit = temple("concurrencyLimit", "none", String.class);
+        this.concurrencyLimitInitial = temple("concurrencyLimitInitial", 64, Integer.class);
+        this.concurrencyLimitMin = temple("concurrencyLimitMin", 8, Integer.class);
+        this.concurrencyLimitMax = temple("concurrencyLimitMax", 1024, Integer.class);
+        this.providers = temple("providers", "", String.class);
+        this.loadBalance = temple("loadBalance", "roundRobin", String.class);
+        this.registry = temple("registry", "none", String.class);
+        this.registryAddress = temple("registryAddress", "127.0.0.1:9900", String.class);
+        this.registryServer = temple("registryServer", false, Boolean.class);
+        this.providerWeight = temple("providerWeight", 1, Integer.class);
+        this.heartbeatInterval = temple("heartbeatInterval", 5000, Integer.class);
+        this.idleTimeout = temple("idleTimeout", 15000, Integer.class);
+        this.reconnectDelay = temple("reconnectDelay", 100, Integer.class);
+        this.reconnectMaxDelay = temple("reconnectMaxDelay", 10000, Integer.class);
+        this.failoverRetries = temple("failoverRetries", 2, Integer.class);
         System.out.println("加载配置文件，address = " + address
-                + ", port = " + port);
+                + ", port = " + port + ", connections = " + connections
+                + ", maxInFlight = " + maxInFlight + ", serializer = " + serializer
+                + ", maxFrameLength = " + maxFrameLength
+                + ", flushConsolidation = " + flushConsolidation
+                + ", flushConsolidationLimit = " + flushConsolidationLimit
+                + ", transport = " + transport + ", tcpQuickAck = " + tcpQuickAck
+                + ", acceptors = " + acceptors
+                + ", batchSize = " + batchSize + ", batchDelayMicros = " + batchDelayMicros
+                + ", compressThreshold = " + compressThreshold
+                + ", methodDictionary = " + methodDictionary + ", timeout = " + timeout
+                + ", serverThreads = " + serverThreads + ", serverQueueSize = " + serverQueueSize
+                + ", serverExecutor = " + serverExecutor + ", clientExecutor = " + clientExecutor
+                + ", concurrencyLimit = " + concurrencyLimit
+                + ", concurrencyLimitInitial = " + concurrencyLimitInitial
+                + ", concurrencyLimitMin = " + concurrencyLimitMin
+                + ", concurrencyLimitMax = " + concurrencyLimitMax
+                + ", providers = " + providers + ", loadBalance = " + loadBalance
+                + ", registry = " + registry + ", registryAddress = " + registryAddress
+                + ", registryServer = " + registryServer + ", providerWeight = " + providerWeight
+                + ", heartbeatInterval = " + heartbeatInterval + ", idleTimeout = " + idleTimeout
+                + ", reconnectDelay = " + reconnectDelay + ", reconnectMaxDelay = " + reconnectMaxDelay
+                + ", failoverRetries = " + failoverRetries);
     }
 
 
@@ -74,6 +194,8 @@ public class ConfigProperties {
                 return defaultValue;
             } else if (Integer.class.equals(clazz) && isNumber(s)) {
                 return clazz.cast(Integer.parseInt(s));
+            } else if (Boolean.class.equals(clazz) && isBoolean(s)) {
+                return clazz.cast(Boolean.parseBoolean(s));
             } else if (String.class.equals(clazz)) {
                 return clazz.cast(s);
             } else {
@@ -91,6 +213,14 @@ public class ConfigProperties {
         return value.matches("-?\\d+");
     }
 
+    /**
+     * @param value     字段值
+     * @return          判断是否布尔值
+     */
+    private boolean isBoolean(String value) {
+        return "true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value);
+    }
+
     public String getAddress() {
         return address;
     }
@@ -99,4 +229,136 @@ public class ConfigProperties {
         return port;
     }
 
+    public int getConnections() {
+        return connections;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public String getSerializer() {
+        return serializer;
+    }
+
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    public boolean isFlushConsolidation() {
+        return flushConsolidation;
+    }
+
+    public int getFlushConsolidationLimit() {
+        return flushConsolidationLimit;
+    }
+
+    public String getTransport() {
+        return transport;
+    }
+
+    public boolean isTcpQuickAck() {
+        return tcpQuickAck;
+    }
+
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getBatchDelayMicros() {
+        return batchDelayMicros;
+    }
+
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    public boolean isMethodDictionary() {
+        return methodDictionary;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public int getServerThreads() {
+        return serverThreads;
+    }
+
+    public int getServerQueueSize() {
+        return serverQueueSize;
+    }
+
+    public String getServerExecutor() {
+        return serverExecutor;
+    }
+
+    public String getClientExecutor() {
+        return clientExecutor;
+    }
+
+    public String getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public int getConcurrencyLimitInitial() {
+        return concurrencyLimitInitial;
+    }
+
+    public int getConcurrencyLimitMin() {
+        return concurrencyLimitMin;
+    }
+
+    public int getConcurrencyLimitMax() {
+        return concurrencyLimitMax;
+    }
+
+    public String getProviders() {
+        return providers;
+    }
+
+    public String getLoadBalance() {
+        return loadBalance;
+    }
+
+    public String getRegistry() {
+        return registry;
+    }
+
+    public String getRegistryAddress() {
+        return registryAddress;
+    }
+
+    public boolean isRegistryServer() {
+        return registryServer;
+    }
+
+    public int getProviderWeight() {
+        return providerWeight;
+    }
+
+    public int getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public int getReconnectDelay() {
+        return reconnectDelay;
+    }
+
+    public int getReconnectMaxDelay() {
+        return reconnectMaxDelay;
+    }
+
+    public int getFailoverRetries() {
+        return failoverRetries;
+    }
+
 }
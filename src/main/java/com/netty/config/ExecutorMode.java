@@ -0,0 +1,102 @@
+package com.netty.config;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ *
+ *  执行阻塞任务使用的线程类型。
+ *      PLATFORM：固定大小的平台线程池，并发数受线程数限制
+ *      VIRTUAL：每个任务一个虚拟线程，阻塞时只挂起虚拟线程、不占用平台线程，需要 JDK 21 及以上
+ *
+ *  项目以 JDK 11 编译，虚拟线程的 API 通过反射获取，当前 JDK 不支持时退回 PLATFORM
+ *
+ * @author yehuisheng
+ */
+public enum ExecutorMode {
+
+    PLATFORM,
+
+    VIRTUAL;
+
+    /** 创建虚拟线程工厂的方法，当前 JDK 不支持时为 null */
+    private static final Method OF_VIRTUAL;
+    /** Thread.Builder 的 name(String, long) 和 factory()，通过公开的接口调用，避免模块访问限制 */
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    /** Executors.newThreadPerTaskExecutor(ThreadFactory) */
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+    /** 当前 JDK 不支持虚拟线程的原因 */
+    private static final Throwable UNAVAILABILITY_CAUSE;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method newExecutor = null;
+        Throwable cause = null;
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            builderName = builder.getMethod("name", String.class, long.class);
+            builderFactory = builder.getMethod("factory");
+            newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            // 预览版 JDK 未开启预览特性时，调用会抛出异常
+            ofVirtual.invoke(null);
+        } catch (Throwable e) {
+            ofVirtual = null;
+            cause = e;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newExecutor;
+        UNAVAILABILITY_CAUSE = cause;
+    }
+
+    /**
+     * @return  当前 JDK 是否支持虚拟线程
+     */
+    public static boolean isVirtualAvailable() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @param name  线程名前缀
+     * @return      每个任务一个虚拟线程的线程池
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String name) {
+        if (!isVirtualAvailable()) {
+            throw new RuntimeException("当前 JDK 不支持虚拟线程", UNAVAILABILITY_CAUSE);
+        }
+        try {
+            Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name + "-", 0L);
+            ThreadFactory factory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("创建虚拟线程池失败", e);
+        }
+    }
+
+    /**
+     * @param name  配置的线程类型：platform、virtual
+     * @return      virtual 在当前 JDK 不支持虚拟线程时退回 platform
+     */
+    public static ExecutorMode of(String name) {
+        switch (name.toLowerCase()) {
+            case "platform":
+                return PLATFORM;
+            case "virtual":
+                if (!isVirtualAvailable()) {
+                    System.err.println("当前 JDK 不支持虚拟线程，使用平台线程池：" + UNAVAILABILITY_CAUSE);
+                    return PLATFORM;
+                }
+                return VIRTUAL;
+            default:
+                throw new IllegalArgumentException("不支持的线程类型：" + name);
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.netty.config;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ *
+ *  网络传输方式，客户端和服务端根据配置选择线程组和 channel 的实现。
+ *      NIO：JDK 的 Selector，所有平台可用
+ *      EPOLL：Netty 的 Linux 原生传输，边缘触发，产生的垃圾更少，并且支持 TCP_QUICKACK 等 Linux 特有的参数
+ *
+ * @author yehuisheng
+ */
+public enum TransportType {
+
+    NIO {
+        @Override
+        public EventLoopGroup newEventLoopGroup(int threads) {
+            return new NioEventLoopGroup(threads);
+        }
+
+        @Override
+        public Class<? extends SocketChannel> socketChannel() {
+            return NioSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends ServerSocketChannel> serverSocketChannel() {
+            return NioServerSocketChannel.class;
+        }
+    },
+
+    EPOLL {
+        @Override
+        public EventLoopGroup newEventLoopGroup(int threads) {
+            return new EpollEventLoopGroup(threads);
+        }
+
+        @Override
+        public Class<? extends SocketChannel> socketChannel() {
+            return EpollSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends ServerSocketChannel> serverSocketChannel() {
+            return EpollServerSocketChannel.class;
+        }
+    };
+
+    /**
+     * @param threads   线程数，0 表示使用 Netty 的默认线程数
+     * @return          创建该传输方式的线程组
+     */
+    public abstract EventLoopGroup newEventLoopGroup(int threads);
+
+    /**
+     * @return  客户端使用的 channel 类型
+     */
+    public abstract Class<? extends SocketChannel> socketChannel();
+
+    /**
+     * @return  服务端监听使用的 channel 类型
+     */
+    public abstract Class<? extends ServerSocketChannel> serverSocketChannel();
+
+    /**
+     * @param name  配置的传输方式：auto、nio、epoll
+     * @return      auto 在原生 epoll 可用时使用 epoll，否则使用 nio
+     */
+    public static TransportType of(String name) {
+        switch (name.toLowerCase()) {
+            case "auto":
+                return Epoll.isAvailable() ? EPOLL : NIO;
+            case "nio":
+                return NIO;
+            case "epoll":
+                if (!Epoll.isAvailable()) {
+                    throw new RuntimeException("当前系统不支持 epoll 传输", Epoll.unavailabilityCause());
+                }
+                return EPOLL;
+            default:
+                throw new IllegalArgumentException("不支持的传输方式：" + name);
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.netty.loadbalance;
+
+import com.netty.model.Provider;
+import com.netty.model.RequestMsg;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ *
+ *  按参数一致性哈希：每个提供者按权重在哈希环上放置多个虚拟节点，节点的位置只由提供者的地址决定，
+ *  请求按路由参数的哈希值顺时针找到第一个虚拟节点，同一个参数总是落在同一个提供者上。
+ *  增加或减少提供者时，只有落在该提供者虚拟节点上的参数会换到其他提供者，其余参数的位置不变。
+ *
+ *  选中的提供者不可用或者调用失败需要重新选择时，沿哈希环顺时针取下一个不同的提供者，
+ *  同一个参数的重新选择顺序也是固定的，原提供者恢复前这些参数集中落在同一个备用提供者上。
+ *
+ *  路由参数使用 hashCode 计算哈希值，应该使用 String、数字等 hashCode 在不同进程中一致的类型；
+ *  没有路由参数的请求随机选择
+ *
+ * @author yehuisheng
+ */
+public class ConsistentHashBalancer implements LoadBalancer {
+
+    /** 每个单位权重的虚拟节点数 */
+    private static final int VIRTUAL_NODES = 160;
+    /** 哈希环上最多的虚拟节点数，权重之和过大时按比例缩减每个提供者的虚拟节点数 */
+    private static final long MAX_NODES = 1 << 16;
+
+    /** 排好序的虚拟节点位置 */
+    private final long[] ring;
+    /** 下标与 ring 对应的提供者下标 */
+    private final int[] owners;
+    /** 提供者的个数 */
+    private final int size;
+
+    /**
+     * @param providers     服务提供者，权重为 0 的提供者不会被选中
+     */
+    public ConsistentHashBalancer(List<Provider> providers) {
+        long weights = 0;
+        for (Provider provider : providers) {
+            weights += provider.getWeight();
+        }
+        if (weights == 0) {
+            throw new IllegalArgumentException("至少需要一个权重大于 0 的提供者");
+        }
+        // 每个单位权重的虚拟节点数，权重之和过大时缩小，权重大于 0 的提供者至少有一个虚拟节点
+        double perWeight = Math.min(VIRTUAL_NODES, (double) MAX_NODES / weights);
+        int[] nodes = new int[providers.size()];
+        int total = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            int weight = providers.get(i).getWeight();
+            nodes[i] = weight == 0 ? 0 : (int) Math.max(1, (long) (weight * perWeight));
+            total += nodes[i];
+        }
+        // 每个虚拟节点为 {位置, 提供者下标}，按位置排序后拆成两个数组，选择时只做二分查找
+        long[][] points = new long[total][];
+        int size = 0;
+        for (int i = 0; i < providers.size(); i++) {
+            long seed = (long) providers.get(i).getAddress().hashCode() << 32;
+            for (int j = 0; j < nodes[i]; j++) {
+                points[size++] = new long[]{mix(seed | j), i};
+            }
+        }
+        Arrays.sort(points, (a, b) -> Long.compare(a[0], b[0]));
+        this.size = providers.size();
+        this.ring = new long[total];
+        this.owners = new int[total];
+        for (int i = 0; i < total; i++) {
+            ring[i] = points[i][0];
+            owners[i] = (int) points[i][1];
+        }
+    }
+
+    @Override
+    public int select(RequestMsg request) {
+        Object key = request == null ? null : request.getRouteKey();
+        long hash = key == null ? ThreadLocalRandom.current().nextLong() : mix(Objects.hashCode(key));
+        return owners[position(hash)];
+    }
+
+    /**
+     *  从路由参数的位置顺时针查找，跳过已经出现过的提供者，只在重新选择时创建标记数组
+     * @param request   本次调用的请求对象，可以为 null
+     * @param attempt   第几次重新选择，从 1 开始
+     * @param previous  上一次选中但不能使用的提供者下标
+     * @return          哈希环上的第 attempt + 1 个不同的提供者，不同的提供者不够时返回 previous，没有路由参数时随机选择
+     */
+    @Override
+    public int reselect(RequestMsg request, int attempt, int previous) {
+        Object key = request == null ? null : request.getRouteKey();
+        if (key == null) {
+            return select(request);
+        }
+        int start = position(mix(Objects.hashCode(key)));
+        boolean[] seen = new boolean[size];
+        int distinct = 0;
+        for (int i = 0; i < ring.length; i++) {
+            int owner = owners[(start + i) % ring.length];
+            if (!seen[owner]) {
+                if (distinct == attempt) {
+                    return owner;
+                }
+                seen[owner] = true;
+                distinct++;
+            }
+        }
+        return previous;
+    }
+
+    /**
+     * @param hash  哈希值
+     * @return      顺时针方向第一个位置不小于 hash 的虚拟节点下标，超过末尾时回到开头
+     */
+    private int position(long hash) {
+        int index = Arrays.binarySearch(ring, hash);
+        if (index < 0) {
+            index = -index - 1;
+            if (index == ring.length) {
+                index = 0;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @param value     原始值
+     * @return          把相近的值打散到整个 long 范围（SplitMix64 的混合函数）
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+}
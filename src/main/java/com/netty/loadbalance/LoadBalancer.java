@@ -0,0 +1,53 @@
+package com.netty.loadbalance;
+
+import com.netty.model.RequestMsg;
+
+/**
+ *
+ *  负载均衡的扩展接口，从多个服务提供者中选出一个。
+ *  创建时传入每个提供者的权重，之后只按下标选择，不关心提供者的具体类型，
+ *  选择在调用线程上执行，实现必须线程安全，并且不能在每次选择时创建对象。
+ *  根据调用结果选择的实现，可以通过 onSend 和 onComplete 获得每个提供者的在途请求数和延迟
+ *
+ * @author yehuisheng
+ */
+public interface LoadBalancer {
+
+    /**
+     * @param request   本次调用的请求对象，按请求内容路由的实现使用，可以为 null
+     * @return          选中的提供者的下标
+     */
+    int select(RequestMsg request);
+
+    /**
+     * @param request   本次调用的请求对象，可以为 null
+     * @param attempt   第几次重新选择，从 1 开始
+     * @param previous  上一次选中但不能使用的提供者下标（例如还没有连接上，或者本次调用已经在该提供者上失败）
+     * @return          重新选择的提供者下标，默认再按负载均衡选择一次，其余提供者仍按权重分配
+     */
+    default int reselect(RequestMsg request, int attempt, int previous) {
+        return select(request);
+    }
+
+    /**
+     * @return  是否需要调用的发送和完成通知，不需要时调用方不为每次调用注册回调
+     */
+    default boolean needsFeedback() {
+        return false;
+    }
+
+    /**
+     * @param index     发送请求的提供者下标
+     */
+    default void onSend(int index) {
+    }
+
+    /**
+     * @param index         提供者下标
+     * @param latencyNanos  从发送请求到收到响应（或者超时、失败）的时间
+     * @param error         调用失败的原因，成功时为 null
+     */
+    default void onComplete(int index, long latencyNanos, Throwable error) {
+    }
+
+}
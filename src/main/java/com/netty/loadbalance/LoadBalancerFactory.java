@@ -0,0 +1,69 @@
+package com.netty.loadbalance;
+
+import com.netty.model.Provider;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ *  负载均衡方式的注册表，按名称创建，内置了 roundRobin、random、p2c 和 consistentHash 四种，
+ *  也可以通过 register 注册其他实现，参数是所有服务提供者，选择结果是提供者在列表中的下标
+ * @author yehuisheng
+ */
+public class LoadBalancerFactory {
+
+    private static final Map<String, Function<List<Provider>, LoadBalancer>> FACTORIES = new ConcurrentHashMap<>();
+
+    static {
+        register("roundRobin", providers -> new RoundRobinBalancer(weights(providers)));
+        register("random", providers -> new RandomBalancer(weights(providers)));
+        register("p2c", providers -> new PowerOfTwoBalancer(weights(providers)));
+        register("consistentHash", ConsistentHashBalancer::new);
+    }
+
+    private LoadBalancerFactory() {
+    }
+
+    /**
+     * @param name      负载均衡方式的名称，在配置文件中使用
+     * @param factory   根据服务提供者创建负载均衡的方法
+     */
+    public static void register(String name, Function<List<Provider>, LoadBalancer> factory) {
+        FACTORIES.put(name, factory);
+    }
+
+    /**
+     * @param name  负载均衡方式的名称
+     * @return      是否支持该负载均衡方式
+     */
+    public static boolean isSupported(String name) {
+        return FACTORIES.containsKey(name);
+    }
+
+    /**
+     * @param name          负载均衡方式的名称
+     * @param providers     服务提供者
+     * @return              创建负载均衡
+     */
+    public static LoadBalancer create(String name, List<Provider> providers) {
+        Function<List<Provider>, LoadBalancer> factory = FACTORIES.get(name);
+        if (factory == null) {
+            throw new IllegalArgumentException("不支持的负载均衡方式：" + name);
+        }
+        return factory.apply(providers);
+    }
+
+    /**
+     * @param providers     服务提供者
+     * @return              每个提供者的权重
+     */
+    private static int[] weights(List<Provider> providers) {
+        int[] weights = new int[providers.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = providers.get(i).getWeight();
+        }
+        return weights;
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.netty.loadbalance;
+
+import com.netty.model.RequestMsg;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ *  根据延迟和在途请求数选择（power of two choices）：随机取两个提供者，选择代价小的一个。
+ *      代价 = 延迟的峰值指数移动平均 * (在途请求数 + 1) / 权重
+ *
+ *  峰值指数移动平均：新的延迟比平均值大时直接取新的延迟，比平均值小时按时间衰减地靠近，
+ *  一个提供者变慢或者 GC 停顿时，它的代价立即升高，调用很快转移到其他提供者；
+ *  平均值按距离上次更新的时间衰减，不再被选中的提供者过一段时间后代价降低，会被重新尝试。
+ *  只随机比较两个提供者，而不是遍历全部，避免所有调用方同时涌向同一个看起来最快的提供者
+ *
+ * @author yehuisheng
+ */
+public class PowerOfTwoBalancer implements LoadBalancer {
+
+    /** 延迟平均值的衰减时间 */
+    private static final double DECAY_NANOS = 2_000_000_000D;
+    /** 服务端拒绝请求时记录的最大延迟，拒绝响应很快，不惩罚的话忙碌的提供者反而显得最快 */
+    private static final long REJECT_PENALTY_NANOS = 1_000_000_000L;
+
+    /** 权重大于 0 的提供者下标 */
+    private final int[] candidates;
+    private final Node[] nodes;
+
+    /**
+     * @param weights   每个提供者的权重，权重为 0 的提供者不会被选中
+     */
+    public PowerOfTwoBalancer(int[] weights) {
+        int count = 0;
+        for (int weight : weights) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("权重不能为负数：" + weight);
+            }
+            if (weight > 0) {
+                count++;
+            }
+        }
+        if (count == 0) {
+            throw new IllegalArgumentException("至少需要一个权重大于 0 的提供者");
+        }
+        this.candidates = new int[count];
+        this.nodes = new Node[weights.length];
+        for (int i = 0, j = 0; i < weights.length; i++) {
+            nodes[i] = new Node(weights[i]);
+            if (weights[i] > 0) {
+                candidates[j++] = i;
+            }
+        }
+    }
+
+    @Override
+    public int select(RequestMsg request) {
+        int n = candidates.length;
+        if (n == 1) {
+            return candidates[0];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(n);
+        // 第二个下标从剩下的 n - 1 个中选，保证两个不同
+        int b = random.nextInt(n - 1);
+        if (b >= a) {
+            b++;
+        }
+        long now = System.nanoTime();
+        int first = candidates[a];
+        int second = candidates[b];
+        return nodes[first].cost(now) <= nodes[second].cost(now) ? first : second;
+    }
+
+    @Override
+    public boolean needsFeedback() {
+        return true;
+    }
+
+    @Override
+    public void onSend(int index) {
+        nodes[index].outstanding.incrementAndGet();
+    }
+
+    @Override
+    public void onComplete(int index, long latencyNanos, Throwable error) {
+        Node node = nodes[index];
+        node.outstanding.decrementAndGet();
+        if (error instanceof RejectedExecutionException) {
+            latencyNanos = Math.max(latencyNanos, Math.min(
+                    (long) node.cost(System.nanoTime()) * 2, REJECT_PENALTY_NANOS));
+        }
+        node.observe(latencyNanos);
+    }
+
+    /**
+     *  一个提供者的统计信息
+     */
+    private static class Node {
+
+        private final int weight;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        /** 延迟的峰值指数移动平均（单位纳秒），写入时加锁，读取时不加锁 */
+        private volatile double ewma;
+        /** 上次更新 ewma 的时间 */
+        private volatile long stamp = System.nanoTime();
+
+        Node(int weight) {
+            this.weight = weight;
+        }
+
+        /**
+         * @param now   当前时间
+         * @return      选择的代价，越小越优先，还没有延迟数据的提供者代价最小，会被优先尝试
+         */
+        double cost(long now) {
+            double latency = ewma * Math.exp(-Math.max(now - stamp, 0) / DECAY_NANOS);
+            return (latency + 1) * (outstanding.get() + 1) / weight;
+        }
+
+        /**
+         * @param latencyNanos  一次调用的延迟
+         */
+        synchronized void observe(long latencyNanos) {
+            long now = System.nanoTime();
+            double w = Math.exp(-Math.max(now - stamp, 0) / DECAY_NANOS);
+            if (latencyNanos > ewma * w) {
+                ewma = latencyNanos;
+            } else {
+                ewma = ewma * w + latencyNanos * (1 - w);
+            }
+            stamp = now;
+        }
+
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.netty.loadbalance;
+
+import com.netty.model.RequestMsg;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ *
+ *  加权随机（Walker 别名法）：创建时把权重分布拆成 n 个等概率的格子，
+ *  每个格子最多放两个提供者（自己和一个别名），选择时随机选一个格子，再掷一次硬币决定取哪一个，
+ *  与提供者数量和权重大小无关，只需要两个随机数
+ *
+ * @author yehuisheng
+ */
+public class RandomBalancer implements LoadBalancer {
+
+    /** 每个格子取自己的概率 */
+    private final double[] probability;
+    /** 每个格子的别名 */
+    private final int[] alias;
+
+    /**
+     * @param weights   每个提供者的权重，权重为 0 的提供者不会被选中
+     */
+    public RandomBalancer(int[] weights) {
+        int n = weights.length;
+        long total = 0;
+        for (int weight : weights) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("权重不能为负数：" + weight);
+            }
+            total += weight;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("至少需要一个权重大于 0 的提供者");
+        }
+        this.probability = new double[n];
+        this.alias = new int[n];
+        // 按平均值缩放，小于 1 的格子需要从大于 1 的格子借概率
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallSize = 0;
+        int largeSize = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = (double) weights[i] * n / total;
+            if (scaled[i] < 1) {
+                small[smallSize++] = i;
+            } else {
+                large[largeSize++] = i;
+            }
+        }
+        while (smallSize > 0 && largeSize > 0) {
+            int less = small[--smallSize];
+            int more = large[--largeSize];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            if (scaled[more] < 1) {
+                small[smallSize++] = more;
+            } else {
+                large[largeSize++] = more;
+            }
+        }
+        // 剩下的格子正好是 1（small 中剩下的只可能来自浮点误差），不需要别名
+        while (largeSize > 0) {
+            probability[large[--largeSize]] = 1;
+        }
+        while (smallSize > 0) {
+            probability[small[--smallSize]] = 1;
+        }
+    }
+
+    @Override
+    public int select(RequestMsg request) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int column = random.nextInt(probability.length);
+        return random.nextDouble() < probability[column] ? column : alias[column];
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.netty.loadbalance;
+
+import com.netty.model.RequestMsg;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ *  平滑加权轮询（与 nginx 相同）：每一轮中每个提供者被选中的次数正好等于它的权重，
+ *  并且同一个提供者的多次选择在一轮中尽量分散，不会连续选中权重大的提供者。
+ *
+ *  一轮的选择顺序只和权重有关（权重先除以最大公约数），一轮较短时创建时先把结果计算到数组中，
+ *  选择时只需要一次原子自增和一次数组访问；一轮较长（权重大或提供者多）时预先计算的代价和内存过大，
+ *  改为每次选择时按 nginx 的方式计算，持有锁遍历一次提供者
+ *
+ * @author yehuisheng
+ */
+public class RoundRobinBalancer implements LoadBalancer {
+
+    /** 预先计算一轮时允许的计算量（一轮的长度乘以提供者数量），注册中心每次推送变更都会重新创建 */
+    private static final long MAX_PRECOMPUTE = 1 << 16;
+
+    /** 一轮的选择结果，一轮过长时为 null */
+    private final int[] sequence;
+    private final AtomicInteger index = new AtomicInteger();
+
+    /** 除以最大公约数后的权重 */
+    private final int[] weights;
+    /** 一轮的长度，即权重之和 */
+    private final long total;
+    /** 每个提供者的当前值，不预先计算时使用，由 this 保护 */
+    private final long[] current;
+
+    /**
+     * @param weights   每个提供者的权重，权重为 0 的提供者不会被选中
+     */
+    public RoundRobinBalancer(int[] weights) {
+        this.weights = reduce(weights);
+        long total = 0;
+        for (int weight : this.weights) {
+            total += weight;
+        }
+        this.total = total;
+        this.current = new long[this.weights.length];
+        if (total * this.weights.length <= MAX_PRECOMPUTE) {
+            int[] sequence = new int[(int) total];
+            for (int i = 0; i < sequence.length; i++) {
+                sequence[i] = next();
+            }
+            this.sequence = sequence;
+        } else {
+            this.sequence = null;
+        }
+    }
+
+    @Override
+    public int select(RequestMsg request) {
+        if (sequence != null) {
+            return sequence[Math.floorMod(index.getAndIncrement(), sequence.length)];
+        }
+        synchronized (this) {
+            return next();
+        }
+    }
+
+    /**
+     * @return  每个提供者的当前值加上自己的权重，选出当前值最大的，再减去总权重
+     */
+    private int next() {
+        int selected = -1;
+        for (int j = 0; j < weights.length; j++) {
+            current[j] += weights[j];
+            if (selected < 0 || current[j] > current[selected]) {
+                selected = j;
+            }
+        }
+        current[selected] -= total;
+        return selected;
+    }
+
+    /**
+     * @param weights   权重
+     * @return          检查权重，并除以所有权重的最大公约数，缩短一轮的长度
+     */
+    private static int[] reduce(int[] weights) {
+        int gcd = 0;
+        for (int weight : weights) {
+            if (weight < 0) {
+                throw new IllegalArgumentException("权重不能为负数：" + weight);
+            }
+            gcd = gcd(gcd, weight);
+        }
+        if (gcd == 0) {
+            throw new IllegalArgumentException("至少需要一个权重大于 0 的提供者");
+        }
+        int[] reduced = new int[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            reduced[i] = weights[i] / gcd;
+        }
+        return reduced;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.netty.metrics;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ *  统计到达传输层的写操作、写入字节数和刷新操作的次数，需要放在 pipeline 的最前面（最靠近 socket 的位置）。
+ *  每次刷新对应一次 write/writev 系统调用，刷新次数除以请求数就是每个请求的系统调用次数
+ *
+ * @author yehuisheng
+ */
+@ChannelHandler.Sharable
+public class FlushCountHandler extends ChannelOutboundHandlerAdapter {
+
+    public static final FlushCountHandler INSTANCE = new FlushCountHandler();
+
+    private static final LongAdder WRITES = RpcMetrics.counter("transport.writes");
+    private static final LongAdder FLUSHES = RpcMetrics.counter("transport.flushes");
+    private static final LongAdder WRITE_BYTES = RpcMetrics.counter("transport.writeBytes");
+
+    private FlushCountHandler() {
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        WRITES.increment();
+        if (msg instanceof ByteBuf) {
+            WRITE_BYTES.add(((ByteBuf) msg).readableBytes());
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        FLUSHES.increment();
+        ctx.flush();
+    }
+
+}
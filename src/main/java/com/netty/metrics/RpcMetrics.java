@@ -0,0 +1,53 @@
+package com.netty.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ *
+ *  框架内部的监控指标，分为两类：
+ *      1、计数器：只增不减的累计值，例如拒绝的请求数，使用 LongAdder 减少多线程竞争
+ *      2、仪表：当前的瞬时值，例如队列长度，读取时才计算
+ *
+ *  使用方在静态字段中持有计数器，热点路径上只有一次 LongAdder 的累加
+ *
+ * @author yehuisheng
+ */
+public class RpcMetrics {
+
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new ConcurrentHashMap<>();
+
+    private RpcMetrics() {
+    }
+
+    /**
+     * @param name  指标名称
+     * @return      获取计数器，不存在则创建
+     */
+    public static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    /**
+     * @param name      指标名称
+     * @param supplier  读取瞬时值的方法，同名的仪表会被覆盖
+     */
+    public static void gauge(String name, LongSupplier supplier) {
+        GAUGES.put(name, supplier);
+    }
+
+    /**
+     * @return  所有指标的当前值，按名称排序
+     */
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> map = new TreeMap<>();
+        COUNTERS.forEach((name, counter) -> map.put(name, counter.sum()));
+        GAUGES.forEach((name, gauge) -> map.put(name, gauge.getAsLong()));
+        return map;
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.netty.model;
+
+import java.io.Serializable;
+
+/**
+ *  批量请求，客户端把短时间内发起的多次调用合并到一个消息中发送，
+ *  requestIds 和 requests 下标一一对应
+ * @author yehuisheng
+ */
+public class BatchRequest implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** 每次调用的请求ID */
+    private long[] requestIds;
+    /** 每次调用的请求对象 */
+    private RequestMsg[] requests;
+
+    public BatchRequest() {
+    }
+
+    public BatchRequest(long[] requestIds, RequestMsg[] requests) {
+        this.requestIds = requestIds;
+        this.requests = requests;
+    }
+
+    public long[] getRequestIds() {
+        return requestIds;
+    }
+
+    public void setRequestIds(long[] requestIds) {
+        this.requestIds = requestIds;
+    }
+
+    public RequestMsg[] getRequests() {
+        return requests;
+    }
+
+    public void setRequests(RequestMsg[] requests) {
+        this.requests = requests;
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.netty.model;
+
+import java.io.Serializable;
+
+/**
+ *  批量响应，与批量请求的调用一一对应，
+ *  errors[i] 为 true 时 results[i] 是接口抛出的异常，否则是接口的返回值
+ * @author yehuisheng
+ */
+public class BatchResponse implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** 每次调用的请求ID */
+    private long[] requestIds;
+    /** 每次调用的执行结果 */
+    private Object[] results;
+    /** 每次调用是否抛出了异常 */
+    private boolean[] errors;
+
+    public BatchResponse() {
+    }
+
+    public BatchResponse(long[] requestIds, Object[] results, boolean[] errors) {
+        this.requestIds = requestIds;
+        this.results = results;
+        this.errors = errors;
+    }
+
+    public long[] getRequestIds() {
+        return requestIds;
+    }
+
+    public void setRequestIds(long[] requestIds) {
+        this.requestIds = requestIds;
+    }
+
+    public Object[] getResults() {
+        return results;
+    }
+
+    public void setResults(Object[] results) {
+        this.results = results;
+    }
+
+    public boolean[] getErrors() {
+        return errors;
+    }
+
+    public void setErrors(boolean[] errors) {
+        this.errors = errors;
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.netty.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ *  服务提供者的地址和权重，配置格式为 host:port 或 host:port:weight，多个提供者用逗号分隔
+ * @author yehuisheng
+ */
+public class Provider {
+
+    private final String host;
+    private final int port;
+    /** 权重，默认为 1，为 0 时不会被选中 */
+    private final int weight;
+
+    public Provider(String host, int port, int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("权重不能为负数：" + host + ":" + port);
+        }
+        this.host = host;
+        this.port = port;
+        this.weight = weight;
+    }
+
+    /**
+     * @param providers     提供者列表，例如 127.0.0.1:8888:3,127.0.0.1:8889
+     * @return              解析提供者列表
+     */
+    public static List<Provider> parse(String providers) {
+        List<Provider> list = new ArrayList<>();
+        for (String item : providers.split(",")) {
+            item = item.trim();
+            if (!item.isEmpty()) {
+                list.add(of(item));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @param provider  一个提供者，格式为 host:port 或 host:port:weight
+     * @return          解析提供者
+     */
+    public static Provider of(String provider) {
+        String[] parts = provider.split(":");
+        if (parts.length < 2 || parts.length > 3) {
+            throw new IllegalArgumentException("提供者的格式应为 host:port[:weight]：" + provider);
+        }
+        try {
+            int port = Integer.parseInt(parts[1].trim());
+            int weight = parts.length == 3 ? Integer.parseInt(parts[2].trim()) : 1;
+            return new Provider(parts[0].trim(), port, weight);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("提供者的端口或权重不是数字：" + provider);
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return  host:port，作为提供者的标识
+     */
+    public String getAddress() {
+        return host + ":" + port;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Provider)) {
+            return false;
+        }
+        Provider provider = (Provider) o;
+        // 只比较地址，权重变化的提供者仍是同一个提供者
+        return port == provider.port && host.equals(provider.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(host, port);
+    }
+
+    @Override
+    public String toString() {
+        return getAddress() + ":" + weight;
+    }
+
+}
@@ -1,9 +1,13 @@
 package com.netty.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Arrays;
 
 /**
+ *  请求对象，握手后得到方法ID的请求只传输方法ID和参数，不再传输接口、方法名和参数类型
  * @author yehuisheng
  */
 public class RequestMsg implements Serializable {
@@ -16,6 +20,12 @@ public class RequestMsg implements Serializable {
     private Class<?> clazz;
     /** 请求方法 */
     private String methodName;
+    /** 握手时服务端分配的方法ID，小于 0 表示没有方法ID，按接口、方法名和参数类型查找方法 */
+    private int methodId = -1;
+    /** 方法签名，客户端据此查找方法ID，不参与序列化 */
+    private transient String signature;
+    /** 一致性哈希路由使用的参数，不参与序列化 */
+    private transient Object routeKey;
 
     public Object[] getParams() {
         return params;
@@ -49,12 +59,60 @@ public class RequestMsg implements Serializable {
         this.paramsType = paramsType;
     }
 
+    public int getMethodId() {
+        return methodId;
+    }
+
+    public void setMethodId(int methodId) {
+        this.methodId = methodId;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public void setSignature(String signature) {
+        this.signature = signature;
+    }
+
+    public Object getRouteKey() {
+        return routeKey;
+    }
+
+    public void setRouteKey(Object routeKey) {
+        this.routeKey = routeKey;
+    }
+
+    /**
+     *  有方法ID时只写入方法ID和参数
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.writeInt(methodId);
+        if (methodId < 0) {
+            out.writeObject(clazz);
+            out.writeObject(methodName);
+            out.writeObject(paramsType);
+        }
+        out.writeObject(params);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        methodId = in.readInt();
+        if (methodId < 0) {
+            clazz = (Class<?>) in.readObject();
+            methodName = (String) in.readObject();
+            paramsType = (Class<?>[]) in.readObject();
+        }
+        params = (Object[]) in.readObject();
+    }
+
     @Override
     public String toString() {
         return "RpcRequestMsg{" +
                 "params=" + Arrays.toString(params) +
                 ", clazz=" + clazz +
                 ", methodName=" + methodName +
+                ", methodId=" + methodId +
                 '}';
     }
 
@@ -1,6 +1,7 @@
 package com.netty.reflection;
 
 import com.netty.annotation.Service;
+import com.netty.util.ObjectUtil;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -10,9 +11,21 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public abstract class BeanFactory {
 
+    /** 类型索引中表示该类型有多个对象 */
+    private static final Object AMBIGUOUS = new Object();
+
     protected volatile Map<String, Object> beansMap;
     protected final Object refreshLock = new Object();
 
+    /** 类型索引，key 为对象的类型，刷新容器时构建，之后只读 */
+    private volatile Map<Class<?>, Object> typeMap = Collections.emptyMap();
+    /** 服务索引，key 为 @Service 对象实现的接口（包括父接口），刷新容器时构建，之后只读 */
+    private volatile Map<Class<?>, Object> serviceMap = Collections.emptyMap();
+    /** 服务索引中只有一个实现类的接口，服务端据此构建方法调用器 */
+    private volatile Map<Class<?>, Object> serviceImplMap = Collections.emptyMap();
+    /** 所有暴露服务的对象 */
+    private volatile List<Object> services = Collections.emptyList();
+
     /** 当前工厂是否已关闭 */
     protected final AtomicBoolean isClose = new AtomicBoolean(true);
 
@@ -22,6 +35,32 @@ public abstract class BeanFactory {
     /** 关闭工厂 */
     protected abstract void close();
 
+    /**
+     *  设置容器的对象，并一次性构建类型索引和服务索引，之后的查找都不需要再遍历容器
+     * @param beans     容器的对象
+     */
+    protected void setBeans(Map<String, Object> beans) {
+        Map<Class<?>, Object> types = new HashMap<>(beans.size() * 2);
+        Map<Class<?>, Object> serviceImpls = new HashMap<>(16);
+        List<Object> serviceList = new ArrayList<>();
+        for (Object bean : beans.values()) {
+            types.merge(bean.getClass(), bean, (a, b) -> AMBIGUOUS);
+            // 当前类是否暴露服务
+            if (bean.getClass().isAnnotationPresent(Service.class)) {
+                serviceList.add(bean);
+                for (Class<?> clazz : ObjectUtil.getInterfaces(bean.getClass())) {
+                    serviceImpls.merge(clazz, bean, (a, b) -> AMBIGUOUS);
+                }
+            }
+        }
+        this.typeMap = Map.copyOf(types);
+        this.serviceMap = Map.copyOf(serviceImpls);
+        serviceImpls.values().removeIf(service -> service == AMBIGUOUS);
+        this.serviceImplMap = Map.copyOf(serviceImpls);
+        this.services = List.copyOf(serviceList);
+        this.beansMap = Collections.unmodifiableMap(beans);
+    }
+
     /**
      * @param clazz 类对象
      * @return      返回该类对象暴露的所有实现类
@@ -30,20 +69,30 @@ public abstract class BeanFactory {
         if (!clazz.isInterface()) {
             throw new IllegalArgumentException("该类型不是接口。。。");
         }
-        List<Object> list = new ArrayList<>();
-        beansMap.forEach((key, value) -> {
-            // 当前类是否暴露服务，是否同类型
-            if (value.getClass().isAnnotationPresent(Service.class) && clazz.isAssignableFrom(value.getClass())) {
-                list.add(value);
-            }
-        });
-        if (list.isEmpty()) {
+        Object service = serviceMap.get(clazz);
+        if (service == null) {
             throw new NullPointerException("没有找到接口的实现类。。。");
         }
-        if (list.size() > 1) {
+        if (service == AMBIGUOUS) {
             throw new NullPointerException("接口的实现类有多个。。。");
         }
-        return list.get(0);
+        return service;
+    }
+
+
+    /**
+     * @return      返回每个服务接口唯一的实现类对象，有多个实现类的接口不包括在内
+     */
+    public Map<Class<?>, Object> getServiceImpls() {
+        return serviceImplMap;
+    }
+
+
+    /**
+     * @return      返回容器中所有暴露服务的对象
+     */
+    public List<Object> getServices() {
+        return services;
     }
 
 
@@ -76,21 +125,11 @@ public abstract class BeanFactory {
      * @return          根据类型获取对象
      */
     public <T> T get(Class<T> clazz) {
-        Set<Map.Entry<String, Object>> entrySet = beansMap.entrySet();
-        List<Object> list = new ArrayList<>();
-        for (Map.Entry<String, Object> entry : entrySet) {
-            if (entry.getValue().getClass().equals(clazz)) {
-                list.add(entry.getValue());
-            }
-        }
-        if (list.isEmpty()) {
-            return null;
+        Object o = typeMap.get(clazz);
+        if (o == AMBIGUOUS) {
+            throw new RuntimeException("当前类型为'" + clazz + "'的对象有多个");
         }
-        if (list.size() == 1) {
-            return clazz.cast(list.get(0));
-        }
-        throw new RuntimeException("当前类型为'" + clazz + "'的对象有多个");
+        return o == null ? null : clazz.cast(o);
     }
 
 }
-
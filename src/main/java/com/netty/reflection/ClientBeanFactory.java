@@ -16,7 +16,7 @@ public class ClientBeanFactory extends BeanFactory {
             synchronized (refreshLock) {
                 if (isClose.get()) {
                     ReflectionFactory factory = ReflectionFactory.getInstance();
-                    beansMap = factory.loadClient(this);
+                    setBeans(factory.loadClient(this));
                     // 启动 netty 客户端
                     RpcNettyClient client = get(RpcNettyClient.class);
                     if (client != null) {
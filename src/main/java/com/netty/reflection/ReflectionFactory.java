@@ -2,6 +2,7 @@ package com.netty.reflection;
 
 import com.netty.annotation.*;
 import com.netty.client.RpcNettyClient;
+import com.netty.util.ObjectUtil;
 import org.reflections.Reflections;
 import java.io.File;
 import java.io.IOException;
@@ -82,10 +83,11 @@ class ReflectionFactory {
 
             }
 
-            // 所有对象加载容器后，对自动注入的属性进行操作
+            // 所有对象加载容器后，一次性构建类型索引，再对自动注入的属性进行操作
+            Map<Class<?>, List<Object>> typeMap = indexByType(map);
             for (Map.Entry<String, Object> entry : map.entrySet()) {
                 // 遍历容器中对象的字段，进行自动注入
-                autoWrite(map, null, entry.getKey(), entry.getValue());
+                autoWrite(map, typeMap, null, entry.getKey(), entry.getValue());
             }
 
         } catch (Exception e) {
@@ -136,17 +138,20 @@ class ReflectionFactory {
 
             }
 
+            // 所有对象加载容器后，一次性构建类型索引
+            Map<Class<?>, List<Object>> typeMap = indexByType(map);
+
             if (rpcNettyClient == null) {
                 throw new RuntimeException("RpcNettyClient not found");
             } else {
                 // 后面的自动注入需要调用 RpcNettyClient 的 getBean 方法，所以优先加载 RpcNettyClient
-                autoWrite(map, rpcNettyClient, "rpcNettyClient", rpcNettyClient);
+                autoWrite(map, typeMap, rpcNettyClient, "rpcNettyClient", rpcNettyClient);
             }
 
-            // 所有对象加载容器后，对自动注入的属性进行操作
+            // 对自动注入的属性进行操作
             for (Map.Entry<String, Object> entry : map.entrySet()) {
                 // 遍历容器中对象的字段，进行自动注入
-                autoWrite(map, rpcNettyClient, entry.getKey(), entry.getValue());
+                autoWrite(map, typeMap, rpcNettyClient, entry.getKey(), entry.getValue());
             }
 
         } catch (Exception e) {
@@ -159,19 +164,20 @@ class ReflectionFactory {
     /**
      *  给容器的对象属性进行自动赋值
      * @param map       容器
+     * @param typeMap   容器的类型索引
      * @param client    Rpc客户端
      * @param key       容器的 key
      * @param value     容器的对象
      */
-    private void autoWrite(Map<String, Object> map, RpcNettyClient client,
-                                  String key, Object value) throws Exception {
+    private void autoWrite(Map<String, Object> map, Map<Class<?>, List<Object>> typeMap,
+                           RpcNettyClient client, String key, Object value) throws Exception {
         // 遍历容器中对象的字段
         for (Field declaredField : value.getClass().getDeclaredFields()) {
             declaredField.setAccessible(true);
             // 判断字段是否自动注入
             if (client != null && declaredField.isAnnotationPresent(Reference.class)) {
                 // 如果使用了 Reference 注解，就使用 client 创建代理对象
-                declaredField.set(value, client.getBeanInterface(declaredField.getType()));
+                declaredField.set(value, client.getBeanInterface(declaredField.getType(), declaredField));
             } else if (declaredField.isAnnotationPresent(AutoImport.class)) {
                 // 获取字段名称
                 String fieldName = declaredField.getAnnotation(AutoImport.class).name();
@@ -179,10 +185,9 @@ class ReflectionFactory {
                     fieldName = declaredField.getName();
                 }
                 // 容器中查找对象
-                Object o = search(declaredField.getType(), map, fieldName);
+                Object o = search(declaredField.getType(), map, typeMap, fieldName);
                 if (o == null) {
                     String s = key + "的字段'" + declaredField.getName() + "'找不到需要注入的值";
-                    search(declaredField.getType(), map, fieldName);
                     throw new RuntimeException(s);
                 }
                 // 自动注入
@@ -195,10 +200,12 @@ class ReflectionFactory {
     /**
      * @param clazz     类型
      * @param map       容器
+     * @param typeMap   容器的类型索引
      * @param name      字段名称
      * @return          根据类型查找容器中同类（包括父类）的对象
      */
-    private Object search(Class<?> clazz, Map<String, Object> map, String name) {
+    private Object search(Class<?> clazz, Map<String, Object> map,
+                          Map<Class<?>, List<Object>> typeMap, String name) {
 
         // 按名字查找
         Object o = map.get(name);
@@ -210,13 +217,8 @@ class ReflectionFactory {
         }
 
         // 按类型查找
-        List<Object> list = new ArrayList<>();
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            if (clazz.isAssignableFrom(entry.getValue().getClass())) {
-                list.add(entry.getValue());
-            }
-        }
-        if (list.size() == 0) {
+        List<Object> list = typeMap.get(clazz);
+        if (list == null) {
             return null;
         }
         if (list.size() == 1) {
@@ -227,6 +229,24 @@ class ReflectionFactory {
         throw new RuntimeException("当前名为'" + name + "'的对象有多个");
     }
 
+    /**
+     * @param map   容器
+     * @return      类型索引，key 为容器对象的类型及其所有父类和接口，value 为该类型的所有对象
+     */
+    private Map<Class<?>, List<Object>> indexByType(Map<String, Object> map) {
+        Map<Class<?>, List<Object>> typeMap = new HashMap<>(map.size() * 4);
+        for (Object value : map.values()) {
+            Set<Class<?>> types = ObjectUtil.getInterfaces(value.getClass());
+            for (Class<?> c = value.getClass(); c != null; c = c.getSuperclass()) {
+                types.add(c);
+            }
+            for (Class<?> type : types) {
+                typeMap.computeIfAbsent(type, k -> new ArrayList<>(1)).add(value);
+            }
+        }
+        return typeMap;
+    }
+
     /**
      * @param c 类对象
      * @return  返回类对象的首字母小写的名称
@@ -1,6 +1,7 @@
 package com.netty.reflection;
 
 import com.netty.server.RpcNettyServer;
+import java.util.Map;
 
 /**
  * @author yehuisheng
@@ -16,8 +17,9 @@ public class ServerBeanFactory extends BeanFactory {
             synchronized (refreshLock) {
                 if (isClose.get()) {
                     ReflectionFactory factory = ReflectionFactory.getInstance();
-                    beansMap = factory.loadService(this);
-                    beansMap.put(factory.getLowerCaseName(getClass()), this);
+                    Map<String, Object> beans = factory.loadService(this);
+                    beans.put(factory.getLowerCaseName(getClass()), this);
+                    setBeans(beans);
                     // 启动 netty 服务端
                     RpcNettyServer server = get(RpcNettyServer.class);
                     if (server != null) {
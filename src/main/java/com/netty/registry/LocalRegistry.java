@@ -0,0 +1,118 @@
+package com.netty.registry;
+
+import com.netty.model.Provider;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ *  进程内的注册中心，同一个 JVM 中的所有 LocalRegistry 共用一份数据，
+ *  服务端和客户端运行在同一个进程（例如测试）时使用，不需要额外的进程、文件或网络。
+ *  回调在持有锁时执行，同一个服务的变更按发生的顺序送达
+ *
+ * @author yehuisheng
+ */
+public class LocalRegistry implements Registry {
+
+    private static final Object LOCK = new Object();
+    /** 服务名称 -> 提供者 */
+    private static final Map<String, Set<Provider>> PROVIDERS = new HashMap<>();
+    /** 服务名称 -> 订阅者 */
+    private static final Map<String, List<RegistryListener>> LISTENERS = new HashMap<>();
+
+    /** 本对象注册的提供者，关闭时注销 */
+    private final Map<String, Set<Provider>> registered = new HashMap<>();
+    /** 本对象的订阅，关闭时取消 */
+    private final Map<String, List<RegistryListener>> subscribed = new HashMap<>();
+
+    @Override
+    public void register(String service, Provider provider) {
+        synchronized (LOCK) {
+            Set<Provider> providers = PROVIDERS.computeIfAbsent(service, key -> new LinkedHashSet<>());
+            Provider previous = null;
+            for (Provider registered : providers) {
+                if (registered.equals(provider)) {
+                    previous = registered;
+                    break;
+                }
+            }
+            if (previous != null && previous.getWeight() == provider.getWeight()) {
+                return;
+            }
+            // 提供者按地址比较，同一个地址以新的权重替换，订阅者收到的新增提供者同样替换原来的
+            providers.remove(provider);
+            providers.add(provider);
+            Set<Provider> own = registered.computeIfAbsent(service, key -> new LinkedHashSet<>());
+            own.remove(provider);
+            own.add(provider);
+            notify(service, Collections.singletonList(provider), Collections.emptyList());
+        }
+    }
+
+    @Override
+    public void unregister(String service, Provider provider) {
+        synchronized (LOCK) {
+            Set<Provider> providers = PROVIDERS.get(service);
+            if (providers != null && providers.remove(provider)) {
+                Set<Provider> own = registered.get(service);
+                if (own != null) {
+                    own.remove(provider);
+                }
+                notify(service, Collections.emptyList(), Collections.singletonList(provider));
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(String service, RegistryListener listener) {
+        synchronized (LOCK) {
+            LISTENERS.computeIfAbsent(service, key -> new ArrayList<>()).add(listener);
+            subscribed.computeIfAbsent(service, key -> new ArrayList<>()).add(listener);
+            Set<Provider> providers = PROVIDERS.get(service);
+            if (providers != null && !providers.isEmpty()) {
+                listener.onChange(service, new ArrayList<>(providers), Collections.emptyList());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (LOCK) {
+            subscribed.forEach((service, listeners) -> {
+                List<RegistryListener> list = LISTENERS.get(service);
+                if (list != null) {
+                    list.removeAll(listeners);
+                }
+            });
+            subscribed.clear();
+            new HashMap<>(registered).forEach((service, providers) ->
+                    new ArrayList<>(providers).forEach(provider -> unregister(service, provider)));
+            registered.clear();
+        }
+    }
+
+    /**
+     * @param service   服务名称
+     * @param added     新加入的提供者
+     * @param removed   退出的提供者
+     */
+    private static void notify(String service, List<Provider> added, List<Provider> removed) {
+        List<RegistryListener> listeners = LISTENERS.get(service);
+        if (listeners == null) {
+            return;
+        }
+        for (RegistryListener listener : listeners) {
+            try {
+                listener.onChange(service, added, removed);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+}
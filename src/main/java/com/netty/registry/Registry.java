@@ -0,0 +1,37 @@
+package com.netty.registry;
+
+import com.netty.model.Provider;
+
+/**
+ *
+ *  注册中心：服务端启动时注册自己暴露的接口，客户端订阅引用的接口，
+ *  提供者加入或退出时注册中心把变更推送给订阅者，客户端据此更新路由，不需要重启
+ *
+ * @author yehuisheng
+ */
+public interface Registry {
+
+    /**
+     * @param service   服务名称（接口的全限定名）
+     * @param provider  提供该服务的地址和权重
+     */
+    void register(String service, Provider provider);
+
+    /**
+     * @param service   服务名称（接口的全限定名）
+     * @param provider  不再提供该服务的地址和权重
+     */
+    void unregister(String service, Provider provider);
+
+    /**
+     * @param service   服务名称（接口的全限定名）
+     * @param listener  订阅服务的变更，订阅后先收到当前所有的提供者，之后只收到增量
+     */
+    void subscribe(String service, RegistryListener listener);
+
+    /**
+     *  注销本对象注册的所有提供者，取消本对象的所有订阅
+     */
+    void close();
+
+}
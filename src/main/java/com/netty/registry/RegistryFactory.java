@@ -0,0 +1,59 @@
+package com.netty.registry;
+
+/**
+ *  根据配置 registry 创建注册中心：
+ *      none：不使用注册中心（默认），客户端使用配置的提供者列表
+ *      local：进程内的注册中心
+ *      socket：连接 registryAddress 上的 SocketRegistryServer
+ * @author yehuisheng
+ */
+public class RegistryFactory {
+
+    private RegistryFactory() {
+    }
+
+    /**
+     * @param name      注册中心的类型
+     * @param address   注册中心的地址，格式为 host:port，socket 类型使用
+     * @param reconnectDelay    与注册中心断开后第一次重连的延迟（单位毫秒），socket 类型使用
+     * @param reconnectMaxDelay 重连延迟的上限（单位毫秒），socket 类型使用
+     * @return          创建注册中心，none 返回 null
+     */
+    public static Registry create(String name, String address, long reconnectDelay, long reconnectMaxDelay) {
+        switch (name.toLowerCase()) {
+            case "none":
+                return null;
+            case "local":
+                return new LocalRegistry();
+            case "socket":
+                return new SocketRegistry(host(address), port(address), reconnectDelay, reconnectMaxDelay);
+            default:
+                throw new IllegalArgumentException("不支持的注册中心：" + name);
+        }
+    }
+
+    /**
+     * @param address   host:port
+     * @return          地址中的 host
+     */
+    public static String host(String address) {
+        int index = address.lastIndexOf(':');
+        if (index <= 0) {
+            throw new IllegalArgumentException("注册中心地址的格式应为 host:port：" + address);
+        }
+        return address.substring(0, index).trim();
+    }
+
+    /**
+     * @param address   host:port
+     * @return          地址中的端口
+     */
+    public static int port(String address) {
+        try {
+            return Integer.parseInt(address.substring(address.lastIndexOf(':') + 1).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("注册中心的端口不是数字：" + address);
+        }
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.netty.registry;
+
+import com.netty.model.Provider;
+import java.util.List;
+
+/**
+ *  服务提供者变更的监听器，回调可能在注册中心的 IO 线程中执行，不能阻塞
+ * @author yehuisheng
+ */
+@FunctionalInterface
+public interface RegistryListener {
+
+    /**
+     * @param service   服务名称
+     * @param added     新加入的提供者
+     * @param removed   退出的提供者
+     */
+    void onChange(String service, List<Provider> added, List<Provider> removed);
+
+}
@@ -0,0 +1,279 @@
+package com.netty.registry;
+
+import com.netty.config.TransportType;
+import com.netty.model.Provider;
+import com.netty.util.ObjectUtil;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.handler.codec.string.StringEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *
+ *  连接 SocketRegistryServer 的注册中心客户端，服务端和客户端各自持有一个。
+ *  注册的提供者随连接存在，进程退出或连接断开后由注册中心自动注销。
+ *  推送在本对象的 IO 线程中回调监听器。
+ *
+ *  连接断开后按指数退避在后台重连，重连成功后重新注册本对象注册过的提供者、重新订阅所有服务，
+ *  注册中心返回每个服务当前的全部提供者，与断开前的差异作为一次变更通知监听器
+ *
+ * @author yehuisheng
+ */
+public class SocketRegistry implements Registry {
+
+    private final String host;
+    private final int port;
+    /** 第一次重连的延迟和重连延迟的上限（单位毫秒） */
+    private final long reconnectDelay;
+    private final long reconnectMaxDelay;
+    private final EventLoopGroup group;
+    private final Bootstrap bootstrap;
+    private volatile Channel channel;
+    private volatile boolean closed;
+    /** 连续重连失败的次数，只在 IO 线程中访问 */
+    private int reconnectAttempts;
+
+    /** 服务名称 -> 监听器 */
+    private final Map<String, List<RegistryListener>> listeners = new ConcurrentHashMap<>();
+    /** 服务名称 -> 本对象注册的提供者，重连后重新注册 */
+    private final Map<String, Set<Provider>> registered = new ConcurrentHashMap<>();
+    /** 服务名称 -> 地址 -> 已经通知监听器的提供者，只在 IO 线程中访问 */
+    private final Map<String, Map<String, Provider>> known = new HashMap<>();
+
+    /**
+     * @param host  注册中心的地址
+     * @param port  注册中心的端口
+     * @param reconnectDelay    第一次重连的延迟（单位毫秒）
+     * @param reconnectMaxDelay 重连延迟的上限（单位毫秒）
+     */
+    public SocketRegistry(String host, int port, long reconnectDelay, long reconnectMaxDelay) {
+        this.host = host;
+        this.port = port;
+        this.reconnectDelay = reconnectDelay;
+        this.reconnectMaxDelay = reconnectMaxDelay;
+        TransportType transport = TransportType.NIO;
+        group = transport.newEventLoopGroup(1);
+        bootstrap = new Bootstrap()
+                .group(group)
+                .channel(transport.socketChannel())
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel socketChannel) {
+                        socketChannel.pipeline()
+                                .addLast(new LineBasedFrameDecoder(SocketRegistryServer.MAX_LINE_LENGTH))
+                                .addLast(new StringDecoder(StandardCharsets.UTF_8))
+                                .addLast(new StringEncoder(StandardCharsets.UTF_8))
+                                .addLast(new PushHandler());
+                    }
+                });
+        try {
+            // 第一次连接失败直接抛出异常，启动时就能发现注册中心的地址配置错误
+            connected(bootstrap.connect(host, port).sync().channel());
+        } catch (InterruptedException e) {
+            group.shutdownGracefully();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("连接注册中心被中断：" + host + ":" + port);
+        } catch (RuntimeException e) {
+            group.shutdownGracefully();
+            throw new IllegalStateException("连接注册中心失败：" + host + ":" + port, e);
+        }
+    }
+
+    @Override
+    public void register(String service, Provider provider) {
+        Set<Provider> set = registered.computeIfAbsent(service, key -> ConcurrentHashMap.newKeySet());
+        // 提供者按地址比较，同一个地址以新的权重重新注册
+        set.remove(provider);
+        set.add(provider);
+        send("REGISTER " + service + " " + provider);
+    }
+
+    @Override
+    public void unregister(String service, Provider provider) {
+        Set<Provider> set = registered.get(service);
+        if (set != null) {
+            set.remove(provider);
+        }
+        send("UNREGISTER " + service + " " + provider);
+    }
+
+    @Override
+    public void subscribe(String service, RegistryListener listener) {
+        listeners.computeIfAbsent(service, key -> new CopyOnWriteArrayList<>()).add(listener);
+        send("SUBSCRIBE " + service);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        listeners.clear();
+        registered.clear();
+        // 连接关闭后注册中心注销本对象注册的所有提供者
+        channel.close().syncUninterruptibly();
+        if (ObjectUtil.canShutdownThreadPool(group)) {
+            group.shutdownGracefully();
+        }
+    }
+
+    /**
+     * @param line  在 IO 线程中发送一行命令，连接断开时不发送，重连后根据注册和订阅的记录重新发送
+     */
+    private void send(String line) {
+        try {
+            group.execute(() -> {
+                Channel channel = this.channel;
+                if (channel.isActive()) {
+                    channel.writeAndFlush(line + "\n");
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("注册中心客户端已经关闭");
+        }
+    }
+
+    /**
+     * @param channel   建立好的连接，重新发送所有的注册和订阅，连接断开后开始重连
+     */
+    private void connected(Channel channel) {
+        this.channel = channel;
+        reconnectAttempts = 0;
+        channel.closeFuture().addListener(f -> scheduleReconnect());
+        registered.forEach((service, providers) -> providers.forEach(provider ->
+                channel.write("REGISTER " + service + " " + provider + "\n")));
+        listeners.keySet().forEach(service -> channel.write("SUBSCRIBE " + service + "\n"));
+        channel.flush();
+    }
+
+    private void scheduleReconnect() {
+        if (closed) {
+            return;
+        }
+        long delay = ObjectUtil.backoff(reconnectAttempts++, reconnectDelay, reconnectMaxDelay);
+        try {
+            group.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // 已经关闭
+        }
+    }
+
+    private void reconnect() {
+        if (closed) {
+            return;
+        }
+        bootstrap.connect(host, port).addListener((ChannelFuture future) -> {
+            if (!future.isSuccess()) {
+                scheduleReconnect();
+                return;
+            }
+            if (closed) {
+                future.channel().close();
+                return;
+            }
+            System.out.println("重新连接注册中心成功：" + host + ":" + port + "。。。");
+            connected(future.channel());
+        });
+    }
+
+    /**
+     * @param service   服务名称
+     * @param added     新加入或权重变更的提供者
+     * @param removed   退出的提供者
+     */
+    private void notifyListeners(String service, List<Provider> added, List<Provider> removed) {
+        if (added.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        List<RegistryListener> list = listeners.get(service);
+        if (list == null) {
+            return;
+        }
+        for (RegistryListener listener : list) {
+            try {
+                listener.onChange(service, added, removed);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     *  处理注册中心推送的 ADD、REMOVE 和订阅后返回的 SYNC（服务当前的全部提供者）
+     */
+    private class PushHandler extends SimpleChannelInboundHandler<String> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, String msg) {
+            String[] parts = msg.trim().split(" ");
+            if (parts.length < 2 || parts.length > 3) {
+                System.err.println("注册中心推送的消息格式错误：" + msg);
+                return;
+            }
+            String service = parts[1];
+            List<Provider> providers = parts.length == 3 ? Provider.parse(parts[2]) : Collections.emptyList();
+            Map<String, Provider> current = known.computeIfAbsent(service, key -> new LinkedHashMap<>());
+            List<Provider> empty = Collections.emptyList();
+            switch (parts[0]) {
+                case "ADD":
+                    providers.forEach(provider -> current.put(provider.getAddress(), provider));
+                    notifyListeners(service, providers, empty);
+                    break;
+                case "REMOVE":
+                    providers.forEach(provider -> current.remove(provider.getAddress()));
+                    notifyListeners(service, empty, providers);
+                    break;
+                case "SYNC": {
+                    // 断开期间退出的提供者不会再收到 REMOVE，以注册中心当前的列表为准
+                    Map<String, Provider> snapshot = new LinkedHashMap<>();
+                    providers.forEach(provider -> snapshot.put(provider.getAddress(), provider));
+                    List<Provider> removed = new ArrayList<>();
+                    current.forEach((address, provider) -> {
+                        if (!snapshot.containsKey(address)) {
+                            removed.add(provider);
+                        }
+                    });
+                    current.clear();
+                    current.putAll(snapshot);
+                    notifyListeners(service, providers, removed);
+                    break;
+                }
+                default:
+                    System.err.println("注册中心推送的消息格式错误：" + msg);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            if (!closed) {
+                System.err.println("与注册中心的连接断开了，正在重连，当前的服务提供者保持不变。。。");
+            }
+            ctx.fireChannelInactive();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            System.err.println("注册中心的连接异常：" + cause);
+            ctx.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,244 @@
+package com.netty.registry;
+
+import com.netty.config.TransportType;
+import com.netty.model.Provider;
+import com.netty.util.ObjectUtil;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.LineBasedFrameDecoder;
+import io.netty.handler.codec.string.StringDecoder;
+import io.netty.handler.codec.string.StringEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *
+ *  基于 TCP 的注册中心服务端，可以由某个服务端通过配置 registryServer 内嵌启动，也可以通过 main 方法单独启动。
+ *  协议按行传输文本，提供者的格式与配置 providers 相同：
+ *      客户端发送：REGISTER 服务名 提供者、UNREGISTER 服务名 提供者、SUBSCRIBE 服务名
+ *      服务端推送：ADD 服务名 提供者列表、REMOVE 服务名 提供者列表
+ *      订阅的应答：SYNC 服务名 当前的全部提供者（没有提供者时省略列表）
+ *  提供者按地址区分，同一个地址以不同的权重再次注册时推送 ADD，订阅者以新的权重替换原来的提供者。
+ *  注册是临时的，注册方的连接断开后，它注册的提供者自动注销并推送给订阅者。
+ *  所有连接共用一个 IO 线程，数据只在这个线程中访问，不需要加锁
+ *
+ * @author yehuisheng
+ */
+public class SocketRegistryServer {
+
+    /** 一行的最大长度 */
+    static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private final int port;
+    private EventLoopGroup group;
+    private Channel serverChannel;
+
+    /** 服务名称 -> 提供者 -> 注册该提供者的连接 */
+    private final Map<String, Map<Provider, Channel>> providers = new HashMap<>();
+    /** 服务名称 -> 订阅该服务的连接 */
+    private final Map<String, Set<Channel>> subscribers = new HashMap<>();
+
+    /**
+     * @param port  监听的端口
+     */
+    public SocketRegistryServer(int port) {
+        this.port = port;
+    }
+
+    /**
+     *  开始监听端口，不阻塞当前线程
+     */
+    public void start() throws InterruptedException {
+        TransportType transport = TransportType.NIO;
+        group = transport.newEventLoopGroup(1);
+        RegistryHandler handler = new RegistryHandler();
+        try {
+            serverChannel = new ServerBootstrap()
+                    .group(group)
+                    .channel(transport.serverSocketChannel())
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel socketChannel) {
+                            socketChannel.pipeline()
+                                    .addLast(new LineBasedFrameDecoder(MAX_LINE_LENGTH))
+                                    .addLast(new StringDecoder(StandardCharsets.UTF_8))
+                                    .addLast(new StringEncoder(StandardCharsets.UTF_8))
+                                    .addLast(handler);
+                        }
+                    })
+                    .bind(port).sync().channel();
+        } catch (InterruptedException | RuntimeException e) {
+            close();
+            throw e;
+        }
+        System.out.println("注册中心启动成功，端口：" + port + "。。。");
+    }
+
+    public void close() {
+        if (serverChannel != null) {
+            serverChannel.close();
+        }
+        if (ObjectUtil.canShutdownThreadPool(group)) {
+            group.shutdownGracefully();
+        }
+    }
+
+    /**
+     * @param args  监听的端口，默认 9900
+     */
+    public static void main(String[] args) throws InterruptedException {
+        SocketRegistryServer server = new SocketRegistryServer(args.length > 0 ? Integer.parseInt(args[0]) : 9900);
+        server.start();
+        server.serverChannel.closeFuture().sync();
+    }
+
+    /**
+     * @param channel   注册方的连接
+     * @param service   服务名称
+     * @param provider  提供者
+     */
+    private void register(Channel channel, String service, Provider provider) {
+        Map<Provider, Channel> map = providers.computeIfAbsent(service, key -> new LinkedHashMap<>());
+        Provider previous = null;
+        for (Provider registered : map.keySet()) {
+            if (registered.equals(provider)) {
+                previous = registered;
+                break;
+            }
+        }
+        // 先删除再放入，键是新的权重
+        map.remove(provider);
+        map.put(provider, channel);
+        if (previous == null || previous.getWeight() != provider.getWeight()) {
+            push(service, "ADD", Collections.singletonList(provider));
+        }
+    }
+
+    /**
+     * @param service   服务名称
+     * @param provider  提供者
+     */
+    private void unregister(String service, Provider provider) {
+        Map<Provider, Channel> map = providers.get(service);
+        if (map != null && map.remove(provider) != null) {
+            push(service, "REMOVE", Collections.singletonList(provider));
+        }
+    }
+
+    /**
+     * @param channel   订阅方的连接，订阅后立即返回当前所有的提供者，没有提供者时也返回
+     * @param service   服务名称
+     */
+    private void subscribe(Channel channel, String service) {
+        subscribers.computeIfAbsent(service, key -> new LinkedHashSet<>()).add(channel);
+        Map<Provider, Channel> map = providers.get(service);
+        channel.writeAndFlush(line("SYNC", service, map == null ? Collections.emptyList() : map.keySet()));
+    }
+
+    /**
+     * @param channel   断开的连接，注销它注册的所有提供者，取消它的所有订阅
+     */
+    private void disconnect(Channel channel) {
+        subscribers.values().forEach(set -> set.remove(channel));
+        providers.forEach((service, map) -> {
+            List<Provider> removed = new ArrayList<>();
+            Iterator<Map.Entry<Provider, Channel>> iterator = map.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Provider, Channel> entry = iterator.next();
+                if (entry.getValue() == channel) {
+                    removed.add(entry.getKey());
+                    iterator.remove();
+                }
+            }
+            if (!removed.isEmpty()) {
+                push(service, "REMOVE", removed);
+            }
+        });
+    }
+
+    /**
+     * @param service   服务名称
+     * @param command   ADD 或 REMOVE
+     * @param changed   变更的提供者，推送给该服务的所有订阅者
+     */
+    private void push(String service, String command, List<Provider> changed) {
+        Set<Channel> channels = subscribers.get(service);
+        if (channels == null || channels.isEmpty()) {
+            return;
+        }
+        String line = line(command, service, changed);
+        for (Channel channel : channels) {
+            channel.writeAndFlush(line);
+        }
+    }
+
+    /**
+     * @return  一行推送消息
+     */
+    static String line(String command, String service, Iterable<Provider> providers) {
+        StringBuilder builder = new StringBuilder(command).append(' ').append(service).append(' ');
+        for (Provider provider : providers) {
+            builder.append(provider).append(',');
+        }
+        // 去掉最后一个逗号，没有提供者时去掉服务名后的空格
+        builder.setLength(builder.length() - 1);
+        return builder.append('\n').toString();
+    }
+
+    /**
+     *  处理注册、注销和订阅命令，所有连接共用一个实例
+     */
+    @ChannelHandler.Sharable
+    private class RegistryHandler extends SimpleChannelInboundHandler<String> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, String msg) {
+            String[] parts = msg.trim().split(" ");
+            try {
+                switch (parts[0]) {
+                    case "REGISTER":
+                        register(ctx.channel(), parts[1], Provider.of(parts[2]));
+                        break;
+                    case "UNREGISTER":
+                        unregister(parts[1], Provider.of(parts[2]));
+                        break;
+                    case "SUBSCRIBE":
+                        subscribe(ctx.channel(), parts[1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("不支持的命令");
+                }
+            } catch (RuntimeException e) {
+                System.err.println("注册中心无法处理的消息：" + msg + "，" + e);
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            disconnect(ctx.channel());
+            ctx.fireChannelInactive();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            System.err.println("注册中心的连接异常：" + ctx.channel().remoteAddress() + "，" + cause);
+            ctx.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,724 @@
+package com.netty.serialize;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.netty.model.BatchRequest;
+import com.netty.model.BatchResponse;
+import com.netty.model.Null;
+import com.netty.model.RequestMsg;
+import com.netty.model.Void;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+import java.io.Externalizable;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ *
+ *  紧凑的二进制序列化方式，每个值以 1 个字节的类型标记开头：
+ *      1、基本类型的包装类、String、byte[]、Class、枚举、数组直接写入，整数使用 zigzag 变长编码
+ *      2、List/Set/Map 写入元素个数和元素，反序列化为 ArrayList/LinkedHashSet/LinkedHashMap
+ *      3、RequestMsg、Null、Void 等框架内部的对象有专门的标记，有方法ID的 RequestMsg 只写入方法ID和参数
+ *      4、可序列化的普通 Java 对象（有无参构造器，没有自定义 writeObject 等方法）按字段逐个写入，
+ *        其他可序列化的对象退化为 Java 原生序列化，不可序列化的对象使用 Gson 转为 JSON
+ *
+ *  不记录对象之间的引用关系，对象图中有循环引用时会因为嵌套层数过多而失败，这种情况请使用 jdk 序列化方式。
+ *
+ *  按字段、Java 原生序列化和 JSON 反序列化都会实例化数据中指定的类型，为了不让对端借此构造任意对象，
+ *  只接受白名单中的类型：服务端暴露的接口和客户端引用的接口在启动时把方法的参数类型、返回值类型
+ *  以及这些类型的字段类型加入白名单，声明为父类或 Object 的其他类型需要调用 allow 方法手动加入。
+ *  Java 原生序列化的数据中除了白名单中的类型，还接受异常和 java.lang、java.util 等包中的常用类型
+ *
+ * @author yehuisheng
+ */
+public class BinarySerializer implements Serializer {
+
+    public static final byte ID = 2;
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte BYTE = 3;
+    private static final byte SHORT = 4;
+    private static final byte INT = 5;
+    private static final byte LONG = 6;
+    private static final byte FLOAT = 7;
+    private static final byte DOUBLE = 8;
+    private static final byte CHAR = 9;
+    private static final byte STRING = 10;
+    private static final byte BYTES = 11;
+    private static final byte ARRAY = 12;
+    private static final byte LIST = 13;
+    private static final byte SET = 14;
+    private static final byte MAP = 15;
+    private static final byte CLASS = 16;
+    private static final byte ENUM = 17;
+    private static final byte REQUEST = 18;
+    private static final byte NULL_VALUE = 19;
+    private static final byte VOID = 20;
+    private static final byte BEAN = 21;
+    private static final byte JDK = 22;
+    private static final byte JSON = 23;
+    private static final byte METHOD_REQUEST = 24;
+
+    /** 对象的最大嵌套层数 */
+    private static final int MAX_DEPTH = 64;
+    private static final Gson GSON = new Gson();
+
+    /** 类名和类对象的缓存，反序列化时避免每次都调用 Class.forName */
+    private static final Map<String, Class<?>> CLASS_MAP = new ConcurrentHashMap<>();
+    /** 按字段序列化的对象的元数据 */
+    private static final ClassValue<BeanMeta> BEAN_META = new ClassValue<>() {
+        @Override
+        protected BeanMeta computeValue(Class<?> type) {
+            return BeanMeta.of(type);
+        }
+    };
+    /** 允许反序列化的类型，key 为类名，数据中的类名不在其中时不会加载该类型 */
+    private static final Map<String, Class<?>> ALLOWED_TYPES = new ConcurrentHashMap<>();
+    /** Java 原生序列化的数据中允许出现的 JDK 类型所在的包 */
+    private static final Set<String> JDK_PACKAGES = Set.of("java.lang", "java.util",
+            "java.util.concurrent", "java.util.concurrent.atomic", "java.math", "java.time");
+    /** Java 原生序列化的过滤器，数据中的每个类型都要经过白名单的检查 */
+    private static final ObjectInputFilter JDK_FILTER = info -> {
+        if (info.depth() > MAX_DEPTH) {
+            return ObjectInputFilter.Status.REJECTED;
+        }
+        Class<?> c = info.serialClass();
+        if (c == null) {
+            return ObjectInputFilter.Status.UNDECIDED;
+        }
+        while (c.isArray()) {
+            c = c.getComponentType();
+        }
+        boolean allowed = c.isPrimitive() || Throwable.class.isAssignableFrom(c)
+                || JDK_PACKAGES.contains(c.getPackageName()) || ALLOWED_TYPES.get(c.getName()) == c;
+        return allowed ? ObjectInputFilter.Status.ALLOWED : ObjectInputFilter.Status.REJECTED;
+    };
+
+    static {
+        for (Class<?> c : new Class<?>[]{boolean.class, byte.class, short.class, char.class,
+                int.class, long.class, float.class, double.class, void.class}) {
+            CLASS_MAP.put(c.getName(), c);
+        }
+        // 框架内部按字段传输的对象
+        allow(BatchRequest.class);
+        allow(BatchResponse.class);
+    }
+
+    /**
+     * @param type  允许反序列化的类型，可以是带泛型的类型，
+     *              类型本身、数组的元素类型、泛型参数以及这些类型的字段类型都会加入白名单
+     */
+    public static void allow(Type type) {
+        if (type instanceof Class) {
+            Class<?> c = (Class<?>) type;
+            if (c.isArray()) {
+                allow(c.getComponentType());
+                return;
+            }
+            if (c.isPrimitive() || BeanMeta.isJdkClass(c) || ALLOWED_TYPES.putIfAbsent(c.getName(), c) != null) {
+                return;
+            }
+            BeanMeta meta = BEAN_META.get(c);
+            for (Field field : meta.supported ? Arrays.asList(meta.fields) : BeanMeta.fieldsOf(c)) {
+                allow(field.getGenericType());
+            }
+        } else if (type instanceof ParameterizedType) {
+            allow(((ParameterizedType) type).getRawType());
+            for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+                allow(argument);
+            }
+        } else if (type instanceof WildcardType) {
+            for (Type bound : ((WildcardType) type).getUpperBounds()) {
+                allow(bound);
+            }
+        }
+    }
+
+    /**
+     * @param method    接口方法，参数类型和返回值类型加入白名单
+     */
+    public static void allow(Method method) {
+        for (Type type : method.getGenericParameterTypes()) {
+            allow(type);
+        }
+        allow(method.getGenericReturnType());
+    }
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public void serialize(Object obj, ByteBuf out) {
+        try {
+            write(out, obj, 0);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalArgumentException("序列化失败，" + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public <T> T deserialize(ByteBuf in, Class<T> clazz) {
+        if (in == null || clazz == null) {
+            return null;
+        }
+        try {
+            return clazz.cast(read(in, 0));
+        } catch (Exception e) {
+            throw new ClassCastException("类型转换异常，" + e.getMessage());
+        }
+    }
+
+    /**
+     * @param buf       缓冲区
+     * @param obj       Java 对象
+     * @param depth     当前的嵌套层数
+     */
+    private static void write(ByteBuf buf, Object obj, int depth) throws Exception {
+        if (obj == null) {
+            buf.writeByte(NULL);
+            return;
+        }
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("对象的嵌套层数过多，可能存在循环引用，请使用 jdk 序列化方式");
+        }
+        Class<?> c = obj.getClass();
+        if (c == String.class) {
+            buf.writeByte(STRING);
+            writeString(buf, (String) obj);
+        } else if (c == Integer.class) {
+            buf.writeByte(INT);
+            writeVarLong(buf, zigzag((Integer) obj));
+        } else if (c == Long.class) {
+            buf.writeByte(LONG);
+            writeVarLong(buf, zigzag((Long) obj));
+        } else if (c == Boolean.class) {
+            buf.writeByte((Boolean) obj ? TRUE : FALSE);
+        } else if (c == Double.class) {
+            buf.writeByte(DOUBLE);
+            buf.writeDouble((Double) obj);
+        } else if (c == Float.class) {
+            buf.writeByte(FLOAT);
+            buf.writeFloat((Float) obj);
+        } else if (c == Byte.class) {
+            buf.writeByte(BYTE);
+            buf.writeByte((Byte) obj);
+        } else if (c == Short.class) {
+            buf.writeByte(SHORT);
+            buf.writeShort((Short) obj);
+        } else if (c == Character.class) {
+            buf.writeByte(CHAR);
+            buf.writeChar((Character) obj);
+        } else if (c == byte[].class) {
+            byte[] bytes = (byte[]) obj;
+            buf.writeByte(BYTES);
+            writeVarLong(buf, bytes.length);
+            buf.writeBytes(bytes);
+        } else if (c == RequestMsg.class) {
+            writeRequest(buf, (RequestMsg) obj, depth);
+        } else if (c == Null.class) {
+            buf.writeByte(NULL_VALUE);
+        } else if (c == Void.class) {
+            buf.writeByte(VOID);
+        } else if (c == Class.class) {
+            buf.writeByte(CLASS);
+            writeString(buf, ((Class<?>) obj).getName());
+        } else if (obj instanceof Enum) {
+            buf.writeByte(ENUM);
+            writeString(buf, ((Enum<?>) obj).getDeclaringClass().getName());
+            writeString(buf, ((Enum<?>) obj).name());
+        } else if (c.isArray()) {
+            int length = Array.getLength(obj);
+            buf.writeByte(ARRAY);
+            writeString(buf, c.getComponentType().getName());
+            writeVarLong(buf, length);
+            for (int i = 0; i < length; i++) {
+                write(buf, Array.get(obj, i), depth + 1);
+            }
+        } else if (obj instanceof Collection) {
+            Collection<?> collection = (Collection<?>) obj;
+            buf.writeByte(obj instanceof Set ? SET : LIST);
+            writeVarLong(buf, collection.size());
+            for (Object element : collection) {
+                write(buf, element, depth + 1);
+            }
+        } else if (obj instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) obj;
+            buf.writeByte(MAP);
+            writeVarLong(buf, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                write(buf, entry.getKey(), depth + 1);
+                write(buf, entry.getValue(), depth + 1);
+            }
+        } else if (obj instanceof Serializable) {
+            BeanMeta meta = BEAN_META.get(c);
+            if (meta.supported) {
+                buf.writeByte(BEAN);
+                writeString(buf, c.getName());
+                for (Field field : meta.fields) {
+                    write(buf, field.get(obj), depth + 1);
+                }
+            } else {
+                writeJdk(buf, obj);
+            }
+        } else {
+            // 不可序列化的对象使用 Gson 转为 JSON
+            buf.writeByte(JSON);
+            writeString(buf, c.getName());
+            writeString(buf, GSON.toJson(obj));
+        }
+    }
+
+    /**
+     * @param buf       缓冲区
+     * @param depth     当前的嵌套层数，与 write 使用同样的上限，避免恶意的数据导致栈溢出
+     * @return          从缓冲区中读取一个 Java 对象
+     */
+    private static Object read(ByteBuf buf, int depth) throws Exception {
+        if (depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("对象的嵌套层数超过了" + MAX_DEPTH + "层");
+        }
+        byte tag = buf.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case BYTE:
+                return buf.readByte();
+            case SHORT:
+                return buf.readShort();
+            case INT:
+                return (int) unzigzag(readVarLong(buf));
+            case LONG:
+                return unzigzag(readVarLong(buf));
+            case FLOAT:
+                return buf.readFloat();
+            case DOUBLE:
+                return buf.readDouble();
+            case CHAR:
+                return buf.readChar();
+            case STRING:
+                return readString(buf);
+            case BYTES: {
+                byte[] bytes = new byte[readLength(buf)];
+                buf.readBytes(bytes);
+                return bytes;
+            }
+            case ARRAY: {
+                Class<?> componentType = forName(readString(buf));
+                int length = readLength(buf);
+                Object array = Array.newInstance(componentType, length);
+                for (int i = 0; i < length; i++) {
+                    Array.set(array, i, read(buf, depth + 1));
+                }
+                return array;
+            }
+            case LIST: {
+                int size = readLength(buf);
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(read(buf, depth + 1));
+                }
+                return list;
+            }
+            case SET: {
+                int size = readLength(buf);
+                Set<Object> set = new LinkedHashSet<>(Math.max(16, size * 4 / 3 + 1));
+                for (int i = 0; i < size; i++) {
+                    set.add(read(buf, depth + 1));
+                }
+                return set;
+            }
+            case MAP: {
+                int size = readLength(buf);
+                Map<Object, Object> map = new LinkedHashMap<>(Math.max(16, size * 4 / 3 + 1));
+                for (int i = 0; i < size; i++) {
+                    map.put(read(buf, depth + 1), read(buf, depth + 1));
+                }
+                return map;
+            }
+            case CLASS:
+                return forName(readString(buf));
+            case ENUM:
+                return readEnum(buf);
+            case REQUEST:
+                return readRequest(buf, depth);
+            case METHOD_REQUEST:
+                return readMethodRequest(buf, depth);
+            case NULL_VALUE:
+                return new Null();
+            case VOID:
+                return new Void();
+            case BEAN:
+                return readBean(buf, depth);
+            case JDK:
+                return readJdk(buf);
+            case JSON:
+                return readJson(buf);
+            default:
+                throw new IllegalArgumentException("无法识别的类型标记：" + tag);
+        }
+    }
+
+    private static void writeRequest(ByteBuf buf, RequestMsg request, int depth) throws Exception {
+        if (request.getMethodId() >= 0) {
+            buf.writeByte(METHOD_REQUEST);
+            writeVarLong(buf, request.getMethodId());
+            writeParams(buf, request.getParams(), depth);
+            return;
+        }
+        buf.writeByte(REQUEST);
+        write(buf, request.getClazz(), depth + 1);
+        write(buf, request.getMethodName(), depth + 1);
+        Class<?>[] paramsType = request.getParamsType();
+        writeVarLong(buf, paramsType == null ? 0 : paramsType.length);
+        if (paramsType != null) {
+            for (Class<?> type : paramsType) {
+                writeString(buf, type.getName());
+            }
+        }
+        writeParams(buf, request.getParams(), depth);
+    }
+
+    private static void writeParams(ByteBuf buf, Object[] params, int depth) throws Exception {
+        writeVarLong(buf, params == null ? 0 : params.length);
+        if (params != null) {
+            for (Object param : params) {
+                write(buf, param, depth + 1);
+            }
+        }
+    }
+
+    private static RequestMsg readRequest(ByteBuf buf, int depth) throws Exception {
+        RequestMsg request = new RequestMsg();
+        request.setClazz((Class<?>) read(buf, depth + 1));
+        request.setMethodName((String) read(buf, depth + 1));
+        Class<?>[] paramsType = new Class<?>[readLength(buf)];
+        for (int i = 0; i < paramsType.length; i++) {
+            paramsType[i] = forName(readString(buf));
+        }
+        request.setParamsType(paramsType);
+        request.setParams(readParams(buf, depth));
+        return request;
+    }
+
+    private static RequestMsg readMethodRequest(ByteBuf buf, int depth) throws Exception {
+        RequestMsg request = new RequestMsg();
+        long methodId = readVarLong(buf);
+        if (methodId < 0 || methodId > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("方法ID超出范围：" + methodId);
+        }
+        request.setMethodId((int) methodId);
+        request.setParams(readParams(buf, depth));
+        return request;
+    }
+
+    private static Object[] readParams(ByteBuf buf, int depth) throws Exception {
+        int length = readLength(buf);
+        if (length == 0) {
+            return null;
+        }
+        Object[] params = new Object[length];
+        for (int i = 0; i < length; i++) {
+            params[i] = read(buf, depth + 1);
+        }
+        return params;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object readEnum(ByteBuf buf) throws Exception {
+        Class enumClass = forName(readString(buf));
+        return Enum.valueOf(enumClass, readString(buf));
+    }
+
+    private static Object readBean(ByteBuf buf, int depth) throws Exception {
+        Class<?> c = allowedType(readString(buf));
+        BeanMeta meta = BEAN_META.get(c);
+        if (!meta.supported) {
+            throw new IllegalArgumentException("类型" + c.getName() + "不能按字段反序列化");
+        }
+        Object obj = meta.constructor.newInstance();
+        for (Field field : meta.fields) {
+            field.set(obj, adapt(field.getType(), read(buf, depth + 1)));
+        }
+        return obj;
+    }
+
+    /**
+     * @param type      字段的类型
+     * @param value     反序列化得到的值，集合固定为 ArrayList/LinkedHashSet/LinkedHashMap
+     * @return          字段声明为其他集合类型（例如 LinkedList、TreeMap、SortedSet）时转换为字段的类型
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object adapt(Class<?> type, Object value) throws Exception {
+        if (value == null || type.isInstance(value)) {
+            return value;
+        }
+        if (value instanceof Collection && Collection.class.isAssignableFrom(type)) {
+            Collection collection = (Collection) newContainer(type);
+            collection.addAll((Collection) value);
+            return collection;
+        }
+        if (value instanceof Map && Map.class.isAssignableFrom(type)) {
+            Map map = (Map) newContainer(type);
+            map.putAll((Map) value);
+            return map;
+        }
+        throw new IllegalArgumentException("无法把" + value.getClass().getName() + "赋值给" + type.getName() + "类型的字段");
+    }
+
+    /**
+     * @param type  集合字段的类型
+     * @return      接口使用 JDK 中常用的实现类，具体类型使用其无参构造器
+     */
+    private static Object newContainer(Class<?> type) throws Exception {
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            if (SortedSet.class.isAssignableFrom(type)) {
+                return new TreeSet<>();
+            }
+            if (Queue.class.isAssignableFrom(type)) {
+                return new LinkedList<>();
+            }
+            if (SortedMap.class.isAssignableFrom(type)) {
+                return new TreeMap<>();
+            }
+            if (ConcurrentMap.class.isAssignableFrom(type)) {
+                return new ConcurrentHashMap<>();
+            }
+            throw new IllegalArgumentException("不支持的集合类型：" + type.getName());
+        }
+        return type.getConstructor().newInstance();
+    }
+
+    /**
+     *  使用 Java 原生序列化，先写入 4 个字节的长度占位，写完后再回填
+     */
+    private static void writeJdk(ByteBuf buf, Object obj) throws Exception {
+        buf.writeByte(JDK);
+        int lengthIndex = buf.writerIndex();
+        buf.writeInt(0);
+        try (ObjectOutputStream oos = new ObjectOutputStream(new ByteBufOutputStream(buf))) {
+            oos.writeObject(obj);
+        }
+        buf.setInt(lengthIndex, buf.writerIndex() - lengthIndex - 4);
+    }
+
+    private static Object readJdk(ByteBuf buf) throws Exception {
+        int length = buf.readInt();
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteBufInputStream(buf, length))) {
+            ois.setObjectInputFilter(JDK_FILTER);
+            return ois.readObject();
+        }
+    }
+
+    private static Object readJson(ByteBuf buf) {
+        Class<?> c = allowedType(readString(buf));
+        String json = readString(buf);
+        try {
+            return GSON.fromJson(json, c);
+        } catch (JsonParseException e) {
+            throw new IllegalArgumentException("JSON 反序列化为" + c.getName() + "失败，" + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param name  数据中的类名
+     * @return      白名单中的类型，不在白名单中时直接失败，不会加载数据中指定的类型
+     */
+    private static Class<?> allowedType(String name) {
+        Class<?> c = ALLOWED_TYPES.get(name);
+        if (c == null) {
+            throw new IllegalArgumentException("类型" + name
+                    + "不在反序列化的白名单中，请调用 BinarySerializer.allow 加入白名单");
+        }
+        return c;
+    }
+
+    private static void writeString(ByteBuf buf, String s) {
+        writeVarLong(buf, ByteBufUtil.utf8Bytes(s));
+        ByteBufUtil.writeUtf8(buf, s);
+    }
+
+    private static String readString(ByteBuf buf) {
+        int length = readLength(buf);
+        String s = buf.toString(buf.readerIndex(), length, StandardCharsets.UTF_8);
+        buf.skipBytes(length);
+        return s;
+    }
+
+    private static void writeVarLong(ByteBuf buf, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.writeByte((int) value);
+    }
+
+    private static long readVarLong(ByteBuf buf) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buf.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("变长整数的格式错误");
+    }
+
+    /**
+     * @return  读取长度，并检查长度没有超过缓冲区剩余的字节数，避免错误的数据导致分配过大的内存
+     */
+    private static int readLength(ByteBuf buf) {
+        long length = readVarLong(buf);
+        if (length < 0 || length > buf.readableBytes()) {
+            throw new IllegalArgumentException("长度超出数据范围：" + length);
+        }
+        return (int) length;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static Class<?> forName(String name) throws ClassNotFoundException {
+        Class<?> c = CLASS_MAP.get(name);
+        if (c == null) {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            c = Class.forName(name, false, loader == null ? BinarySerializer.class.getClassLoader() : loader);
+            CLASS_MAP.put(name, c);
+        }
+        return c;
+    }
+
+    /**
+     *  按字段序列化的对象的元数据
+     */
+    private static final class BeanMeta {
+
+        private static final BeanMeta UNSUPPORTED = new BeanMeta(null, null, false);
+        private static final String[] HOOKS = {"writeObject", "readObject", "readObjectNoData",
+                "writeReplace", "readResolve"};
+
+        private final Constructor<?> constructor;
+        /** 父类的字段在前，同一个类的字段按名称排序，保证通信双方的字段顺序一致 */
+        private final Field[] fields;
+        private final boolean supported;
+
+        private BeanMeta(Constructor<?> constructor, Field[] fields, boolean supported) {
+            this.constructor = constructor;
+            this.fields = fields;
+            this.supported = supported;
+        }
+
+        /**
+         * @param type  类型
+         * @return      解析类型的字段，类型不能按字段序列化时返回 UNSUPPORTED
+         */
+        private static BeanMeta of(Class<?> type) {
+            if (Externalizable.class.isAssignableFrom(type) || Throwable.class.isAssignableFrom(type)
+                    || Modifier.isAbstract(type.getModifiers())) {
+                return UNSUPPORTED;
+            }
+            Deque<Class<?>> hierarchy = new ArrayDeque<>();
+            for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+                if (isJdkClass(c) || hasHook(c)) {
+                    return UNSUPPORTED;
+                }
+                hierarchy.push(c);
+            }
+            try {
+                List<Field> list = new ArrayList<>();
+                for (Class<?> c : hierarchy) {
+                    Field[] declaredFields = c.getDeclaredFields();
+                    Arrays.sort(declaredFields, Comparator.comparing(Field::getName));
+                    for (Field field : declaredFields) {
+                        if (isSerialField(field)) {
+                            field.setAccessible(true);
+                            list.add(field);
+                        }
+                    }
+                }
+                Constructor<?> constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                return new BeanMeta(constructor, list.toArray(new Field[0]), true);
+            } catch (NoSuchMethodException | RuntimeException e) {
+                // 没有无参构造器，或者无法访问字段
+                return UNSUPPORTED;
+            }
+        }
+
+        /**
+         * @param type  不能按字段序列化的类型
+         * @return      该类型及其父类（JDK 中的类型除外）中会随对象一起传输的字段，用于把字段类型加入白名单
+         */
+        private static List<Field> fieldsOf(Class<?> type) {
+            List<Field> list = new ArrayList<>();
+            for (Class<?> c = type; c != null && !isJdkClass(c); c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (isSerialField(field)) {
+                        list.add(field);
+                    }
+                }
+            }
+            return list;
+        }
+
+        private static boolean isSerialField(Field field) {
+            int modifiers = field.getModifiers();
+            return !Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers);
+        }
+
+        private static boolean isJdkClass(Class<?> c) {
+            String name = c.getName();
+            return name.startsWith("java.") || name.startsWith("javax.")
+                    || name.startsWith("jdk.") || name.startsWith("sun.");
+        }
+
+        private static boolean hasHook(Class<?> c) {
+            for (Method method : c.getDeclaredMethods()) {
+                for (String hook : HOOKS) {
+                    if (hook.equals(method.getName())) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.netty.serialize;
+
+import com.netty.util.ByteUtil;
+import io.netty.buffer.ByteBuf;
+
+/**
+ *  Java 原生序列化，不可序列化的对象先用 Gson 转为 JSON 字符串
+ * @author yehuisheng
+ */
+public class JdkSerializer implements Serializer {
+
+    public static final byte ID = 1;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return "jdk";
+    }
+
+    @Override
+    public void serialize(Object obj, ByteBuf out) {
+        ByteUtil.write(obj, out);
+    }
+
+    @Override
+    public <T> T deserialize(ByteBuf in, Class<T> clazz) {
+        return ByteUtil.cast(in, clazz);
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.netty.serialize;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ *
+ *  序列化方式的扩展接口，内置了 jdk 和 binary 两种实现，
+ *  也可以通过 Java SPI（META-INF/services/com.netty.serialize.Serializer）扩展其他序列化方式。
+ *
+ *  编号会写入协议中，服务端按请求使用的序列化方式反序列化，并以同样的方式序列化响应，
+ *  因此客户端选择的序列化方式就是这条连接上双方协商的结果
+ *
+ * @author yehuisheng
+ */
+public interface Serializer {
+
+    /**
+     * @return  序列化方式的编号，不能与其他序列化方式重复
+     */
+    byte getId();
+
+    /**
+     * @return  序列化方式的名称，在配置文件中使用
+     */
+    String getName();
+
+    /**
+     * @param obj   Java 对象
+     * @param out   发送缓冲区，对象直接序列化到缓冲区中
+     */
+    void serialize(Object obj, ByteBuf out);
+
+    /**
+     * @param in        接收缓冲区（通常是一条消息的切片），直接从缓冲区中反序列化
+     * @param clazz     类型
+     * @param <T>       泛型转换
+     * @return          将缓冲区中的数据转为 Java 对象
+     */
+    <T> T deserialize(ByteBuf in, Class<T> clazz);
+
+}
@@ -0,0 +1,69 @@
+package com.netty.serialize;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *  序列化方式的注册表，可以按编号或名称查找
+ * @author yehuisheng
+ */
+public class SerializerFactory {
+
+    /** 下标为序列化方式的编号 */
+    private static final Serializer[] SERIALIZERS = new Serializer[128];
+    private static final Map<String, Serializer> NAME_MAP = new ConcurrentHashMap<>();
+
+    static {
+        register(new JdkSerializer());
+        register(new BinarySerializer());
+        // 加载通过 Java SPI 扩展的序列化方式
+        for (Serializer serializer : ServiceLoader.load(Serializer.class)) {
+            register(serializer);
+        }
+    }
+
+    private SerializerFactory() {
+    }
+
+    /**
+     * @param serializer    注册序列化方式
+     */
+    public static synchronized void register(Serializer serializer) {
+        byte id = serializer.getId();
+        if (id < 0) {
+            throw new IllegalArgumentException("序列化方式的编号不能为负数：" + id);
+        }
+        Serializer old = SERIALIZERS[id];
+        if (old != null && old.getClass() != serializer.getClass()) {
+            throw new IllegalArgumentException("序列化方式的编号重复了：" + id);
+        }
+        SERIALIZERS[id] = serializer;
+        NAME_MAP.put(serializer.getName(), serializer);
+    }
+
+    /**
+     * @param id    序列化方式的编号
+     * @return      根据编号获取序列化方式
+     */
+    public static Serializer get(byte id) {
+        Serializer serializer = id < 0 ? null : SERIALIZERS[id];
+        if (serializer == null) {
+            throw new IllegalArgumentException("不支持的序列化方式：" + id);
+        }
+        return serializer;
+    }
+
+    /**
+     * @param name  序列化方式的名称
+     * @return      根据名称获取序列化方式
+     */
+    public static Serializer get(String name) {
+        Serializer serializer = NAME_MAP.get(name);
+        if (serializer == null) {
+            throw new IllegalArgumentException("不支持的序列化方式：" + name);
+        }
+        return serializer;
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.netty.server;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ *
+ *  根据请求延迟自动调整的并发限制（Vegas 算法）：
+ *      1、记录一段时间内的最小延迟作为无排队时的延迟，每个窗口的平均延迟作为当前延迟
+ *      2、估计排队的请求数 = 限制 * (1 - 无排队延迟 / 当前延迟)
+ *      3、排队数很少时增大限制，排队数超过 6 * log10(限制) 时缩小限制，在两者之间保持不变
+ *      4、隔一段时间（约 30 * 限制 个请求，带随机抖动）重新测量无排队延迟，
+ *        下游整体变慢之后，限制不会一直停留在下限
+ *
+ *  执行中的请求数达到限制时，新请求直接拒绝，不进入线程池排队
+ *
+ * @author yehuisheng
+ */
+public class ConcurrencyLimiter {
+
+    /** 一个窗口至少持续的时间 */
+    private static final long WINDOW_NANOS = 10_000_000L;
+    /** 一个窗口至少包含的样本数 */
+    private static final int WINDOW_SAMPLES = 10;
+    /** 重新测量无排队延迟的间隔，单位为当前限制的倍数（请求数） */
+    private static final int PROBE_MULTIPLIER = 30;
+
+    private final int minLimit;
+    private final int maxLimit;
+    /** 执行中的请求数 */
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /** 当前的并发限制 */
+    private volatile int limit;
+
+    /* 以下字段只在 sample 方法中使用，由对象锁保护 */
+    /** 未取整的并发限制 */
+    private double estimatedLimit;
+    /** 无排队时的延迟（单位纳秒），0 表示需要重新测量 */
+    private double noLoadRtt;
+    /** 距离下次重新测量无排队延迟的请求数 */
+    private long probeCountdown;
+    private long windowStart = System.nanoTime();
+    private long windowRttSum;
+    private int windowSamples;
+    /** 窗口内执行中请求数的最大值 */
+    private int windowMaxInFlight;
+
+    /**
+     * @param initialLimit  初始的并发限制
+     * @param minLimit      并发限制的下限
+     * @param maxLimit      并发限制的上限
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(minLimit, 1);
+        this.maxLimit = Math.max(maxLimit, this.minLimit);
+        this.estimatedLimit = Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit);
+        this.limit = (int) estimatedLimit;
+        this.probeCountdown = nextProbe();
+    }
+
+    /**
+     * @return  执行中的请求数未达到限制时占用一个名额并返回 true，否则返回 false
+     */
+    public boolean tryAcquire() {
+        for (;;) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param rttNanos  请求从到达到完成的时间，用于调整并发限制
+     */
+    public void release(long rttNanos) {
+        int current = inFlight.getAndDecrement();
+        sample(rttNanos, current);
+    }
+
+    /**
+     *  请求没有执行（例如提交线程池失败），只归还名额，不记录延迟
+     */
+    public void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @param rttNanos  请求的延迟
+     * @param inFlight  请求完成前执行中的请求数
+     */
+    private synchronized void sample(long rttNanos, int inFlight) {
+        windowRttSum += rttNanos;
+        windowSamples++;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlight);
+        if (--probeCountdown <= 0) {
+            // 下一个窗口的延迟作为新的无排队延迟
+            noLoadRtt = 0;
+            probeCountdown = nextProbe();
+        }
+        long now = System.nanoTime();
+        if (windowSamples < WINDOW_SAMPLES || now - windowStart < WINDOW_NANOS) {
+            return;
+        }
+        update((double) windowRttSum / windowSamples, windowMaxInFlight);
+        windowStart = now;
+        windowRttSum = 0;
+        windowSamples = 0;
+        windowMaxInFlight = 0;
+    }
+
+    /**
+     * @param rtt           本窗口的平均延迟
+     * @param maxInFlight   本窗口执行中请求数的最大值
+     */
+    private void update(double rtt, int maxInFlight) {
+        if (noLoadRtt == 0 || rtt < noLoadRtt) {
+            noLoadRtt = rtt;
+            return;
+        }
+        if (maxInFlight * 2 < estimatedLimit) {
+            // 实际并发远低于限制，延迟不能说明服务端的容量，保持不变
+            return;
+        }
+        double log = Math.max(1, Math.log10(estimatedLimit));
+        double queue = estimatedLimit * (1 - noLoadRtt / rtt);
+        double newLimit;
+        if (queue <= log) {
+            // 几乎没有排队，快速增大
+            newLimit = estimatedLimit + 6 * log;
+        } else if (queue < 3 * log) {
+            newLimit = estimatedLimit + log;
+        } else if (queue > 6 * log) {
+            newLimit = estimatedLimit - log;
+        } else {
+            return;
+        }
+        estimatedLimit = Math.min(Math.max(newLimit, minLimit), maxLimit);
+        limit = (int) estimatedLimit;
+    }
+
+    /**
+     * @return  距离下次重新测量无排队延迟的请求数，加入随机抖动，避免多个限制同时重新测量
+     */
+    private long nextProbe() {
+        return (long) (PROBE_MULTIPLIER * estimatedLimit * (0.5 + ThreadLocalRandom.current().nextDouble() * 0.5));
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.netty.server;
+
+import com.netty.annotation.AutoImport;
+import com.netty.annotation.ObjectScan;
+import com.netty.reflection.BeanFactory;
+import com.netty.serialize.BinarySerializer;
+import com.netty.util.ObjectUtil;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ *
+ *  服务端的方法调用器注册表，服务启动时根据 BeanFactory 的服务索引一次性构建，
+ *  接口由哪个对象提供、是否有多个实现类都以服务索引为准，
+ *  之后每次请求只需按 接口 -> 方法名 -> 参数类型 查表，不再反射查找方法。
+ *  每个方法按签名排序后分配一个方法ID，握手时把签名表发给客户端，之后的请求只需携带方法ID
+ *
+ * @author yehuisheng
+ */
+@ObjectScan
+public class InvokerRegistry {
+
+    private static final Class<?>[] EMPTY_TYPES = new Class<?>[0];
+
+    @AutoImport
+    private BeanFactory beanFactory;
+
+    /** key 为接口，value 为该接口的方法，方法名相同的重载方法放在同一个数组中 */
+    private volatile Map<Class<?>, Map<String, MethodInvoker[]>> invokerMap = Collections.emptyMap();
+    /** 下标为方法ID的调用器 */
+    private volatile MethodInvoker[] invokers = new MethodInvoker[0];
+    /** 下标为方法ID的方法签名 */
+    private volatile String[] signatures = new String[0];
+
+    /**
+     *  解析容器中所有 @Service 对象暴露的接口方法，构建调用器注册表
+     */
+    public void load() {
+        // 接口及其唯一的实现类对象
+        Map<Class<?>, Object> serviceMap = beanFactory.getServiceImpls();
+        Map<Class<?>, Map<String, MethodInvoker[]>> map = new HashMap<>(serviceMap.size() * 2);
+        // 按签名排序，同样的接口在每次启动时得到同样的方法ID
+        SortedMap<String, MethodInvoker> signatureMap = new TreeMap<>();
+        try {
+            for (Map.Entry<Class<?>, Object> entry : serviceMap.entrySet()) {
+                Map<String, MethodInvoker[]> methodMap = new HashMap<>(16);
+                for (Method method : entry.getKey().getMethods()) {
+                    if (Modifier.isStatic(method.getModifiers())) {
+                        continue;
+                    }
+                    // 请求中可能按字段传输的参数类型
+                    BinarySerializer.allow(method);
+                    MethodInvoker invoker = new MethodInvoker(entry.getKey(), method, entry.getValue());
+                    signatureMap.put(ObjectUtil.getSignature(
+                            entry.getKey(), method.getName(), invoker.getParamsType()), invoker);
+                    methodMap.merge(method.getName(), new MethodInvoker[]{invoker}, (a, b) -> {
+                        MethodInvoker[] merged = Arrays.copyOf(a, a.length + 1);
+                        merged[a.length] = b[0];
+                        return merged;
+                    });
+                }
+                map.put(entry.getKey(), methodMap);
+            }
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException("解析服务接口的方法失败", e);
+        }
+        this.invokerMap = map;
+        this.invokers = signatureMap.values().toArray(new MethodInvoker[0]);
+        this.signatures = signatureMap.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * @param methodId  方法ID
+     * @return          根据握手时下发的方法ID查找调用器
+     */
+    public MethodInvoker get(int methodId) throws NoSuchMethodException {
+        MethodInvoker[] array = this.invokers;
+        if (methodId < 0 || methodId >= array.length) {
+            throw new NoSuchMethodException("方法ID不存在：" + methodId);
+        }
+        return array[methodId];
+    }
+
+    /**
+     * @return  所有暴露的接口，启动时注册到注册中心
+     */
+    public Set<Class<?>> getServices() {
+        return Collections.unmodifiableSet(invokerMap.keySet());
+    }
+
+    /**
+     * @return  下标为方法ID的方法签名，握手时发给客户端
+     */
+    public String[] getSignatures() {
+        return signatures;
+    }
+
+    /**
+     * @param clazz         接口
+     * @param methodName    方法名
+     * @param paramsType    参数类型
+     * @return              查找接口方法的调用器
+     */
+    public MethodInvoker get(Class<?> clazz, String methodName, Class<?>[] paramsType)
+            throws NoSuchMethodException {
+        if (!clazz.isInterface()) {
+            throw new IllegalArgumentException("该类型不是接口。。。");
+        }
+        Map<String, MethodInvoker[]> methodMap = invokerMap.get(clazz);
+        if (methodMap == null) {
+            // 没有实现类或实现类有多个，由服务索引给出具体的原因
+            beanFactory.getServiceImpl(clazz);
+            throw new NullPointerException("没有找到接口的实现类。。。");
+        }
+        MethodInvoker[] overloads = methodMap.get(methodName);
+        if (overloads != null) {
+            Class<?>[] types = paramsType == null ? EMPTY_TYPES : paramsType;
+            for (MethodInvoker invoker : overloads) {
+                if (Arrays.equals(invoker.getParamsType(), types)) {
+                    return invoker;
+                }
+            }
+        }
+        throw new NoSuchMethodException(clazz.getName() + "." + methodName);
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.netty.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ *
+ *  接口方法的调用器，服务启动时解析一次，之后每次请求直接调用。
+ *      MethodHandle 已经绑定了接口的实现类对象，并把参数统一展开成 Object[]，
+ *      返回值统一为 Object（无返回值的方法返回 null），调用时不需要再查找方法和做访问检查
+ *
+ * @author yehuisheng
+ */
+public class MethodInvoker {
+
+    /** 暴露该方法的服务接口 */
+    private final Class<?> service;
+    /** 接口方法 */
+    private final Method method;
+    /** 参数类型，查找重载方法时使用，避免每次调用 Method.getParameterTypes 复制数组 */
+    private final Class<?>[] paramsType;
+    /** 绑定了实现类对象的方法句柄，类型为 (Object[])Object */
+    private final MethodHandle handle;
+    /** 方法是否有返回值 */
+    private final boolean hasReturn;
+
+    MethodInvoker(Class<?> service, Method method, Object instance) throws IllegalAccessException {
+        this.service = service;
+        this.method = method;
+        this.paramsType = method.getParameterTypes();
+        this.hasReturn = method.getReturnType() != void.class;
+        // 接口可能不是 public 的，需要先打开访问权限
+        method.setAccessible(true);
+        this.handle = MethodHandles.lookup().unreflect(method)
+                .bindTo(instance)
+                .asSpreader(Object[].class, method.getParameterCount())
+                .asType(MethodType.methodType(Object.class, Object[].class));
+    }
+
+    /**
+     * @param args  方法参数
+     * @return      执行方法，返回执行结果，无返回值的方法返回 null
+     * @throws Throwable    方法实现抛出的异常，不会被包装
+     */
+    public Object invoke(Object[] args) throws Throwable {
+        return (Object) handle.invokeExact(args);
+    }
+
+    public Class<?> getService() {
+        return service;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public Class<?>[] getParamsType() {
+        return paramsType;
+    }
+
+    public boolean hasReturn() {
+        return hasReturn;
+    }
+
+}
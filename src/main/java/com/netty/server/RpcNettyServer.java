@@ -3,16 +3,24 @@ package com.netty.server;
 import com.netty.annotation.AutoImport;
 import com.netty.annotation.ObjectScan;
 import com.netty.config.ConfigProperties;
+import com.netty.config.TransportType;
 import com.netty.code.ProDeCoder;
 import com.netty.code.ProEnCoder;
+import com.netty.metrics.FlushCountHandler;
+import com.netty.model.Provider;
+import com.netty.registry.Registry;
+import com.netty.registry.RegistryFactory;
+import com.netty.registry.SocketRegistryServer;
 import com.netty.util.ObjectUtil;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.util.concurrent.DefaultEventExecutorGroup;
-import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.handler.flush.FlushConsolidationHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author yehuisheng
@@ -24,51 +32,101 @@ public class RpcNettyServer {
     private ConfigProperties configProperties;
     @AutoImport
     private RpcServerHandler rpcServerHandler;
+    @AutoImport
+    private InvokerRegistry invokerRegistry;
+    @AutoImport
+    private ServerExecutor serverExecutor;
+    @AutoImport
+    private ServerLimiter serverLimiter;
 
-    private EventExecutorGroup eventExecutors;
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
+    /** 内嵌的 socket 注册中心，没有开启时为 null */
+    private SocketRegistryServer registryServer;
+    private Registry registry;
 
     public void start() {
 
+        // 启动前一次性解析所有暴露的接口方法
+        invokerRegistry.load();
+
         final int processors = Runtime.getRuntime().availableProcessors();
 
-        // 负责接收客户端连接的线程池
-        bossGroup = new NioEventLoopGroup(processors > 1 ? processors/2 : processors);
+        // 根据配置选择 epoll 或 NIO 传输
+        TransportType transport = TransportType.of(configProperties.getTransport());
+        // 多个 channel 监听同一端口，由内核把新连接分配给不同的 channel，只有 epoll 传输支持
+        int acceptors = Math.max(configProperties.getAcceptors(), 1);
+        if (acceptors > 1 && transport != TransportType.EPOLL) {
+            System.err.println("SO_REUSEPORT 需要 epoll 传输，只监听一个 channel。。。");
+            acceptors = 1;
+        }
+        // 负责接收客户端连接的线程池，每个监听 channel 独占一个线程
+        bossGroup = transport.newEventLoopGroup(Math.max(acceptors, processors > 1 ? processors/2 : processors));
         // 负责IO操作/任务处理的线程池
-        workerGroup = new NioEventLoopGroup(processors * 2);
-        // 自定义异步任务线程组
-        eventExecutors = new DefaultEventExecutorGroup(processors);
+        workerGroup = transport.newEventLoopGroup(processors * 2);
+        // 执行接口方法的有界线程池，handler 在 IO 线程中把请求提交给它
+        serverExecutor.start();
+        // 根据请求延迟自动调整的并发限制
+        serverLimiter.start();
 
         try {
             /*
              *  1、初始化两个线程组
-             *  2、设置 NIO 通信 channel
+             *  2、设置通信 channel（epoll 或 NIO）
              *  3、定义阻塞队列的长度
              *  4、设置是否监控客户端的连接状态
              *  5、添加信道（channel）的处理器
              */
             ServerBootstrap bootstrap = new ServerBootstrap()
                     .group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(transport.serverSocketChannel())
                     .option(ChannelOption.SO_BACKLOG, 128)
                     .childOption(ChannelOption.SO_KEEPALIVE, true)
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         protected void initChannel(SocketChannel socketChannel) {
                             ChannelPipeline pipeline = socketChannel.pipeline();
-                            // 添加编码器，解码器，handler，处理 handler 的线程池
-                            pipeline.addLast(new ProDeCoder())
-                                    .addLast(new ProEnCoder())
-                                    .addLast(eventExecutors, rpcServerHandler);
+                            // 统计刷新次数的 handler 放在最前面，只统计真正到达 socket 的刷新
+                            pipeline.addLast(FlushCountHandler.INSTANCE);
+                            if (configProperties.isFlushConsolidation()) {
+                                // 读事件中产生的刷新推迟到本轮读取结束，其他线程的刷新合并成 EventLoop 的一个任务
+                                pipeline.addLast(new FlushConsolidationHandler(
+                                        configProperties.getFlushConsolidationLimit(), true));
+                            }
+                            if (configProperties.getIdleTimeout() > 0) {
+                                // 客户端在空闲时发送心跳，长时间读不到任何数据说明客户端已经失效；
+                                // 暂停读取期间写空闲时由服务端发送心跳，客户端仍能读到数据
+                                long idleTimeout = configProperties.getIdleTimeout();
+                                pipeline.addLast(new IdleStateHandler(idleTimeout,
+                                        Math.max(1, idleTimeout / 3), 0, TimeUnit.MILLISECONDS));
+                            }
+                            // 添加编码器，解码器，handler
+                            pipeline.addLast(new ProDeCoder(configProperties.getMaxFrameLength()))
+                                    .addLast(new ProEnCoder(configProperties.getCompressThreshold()))
+                                    .addLast(rpcServerHandler);
                         }
                     });
 
-            ChannelFuture channelFuture = bootstrap.bind(configProperties.getPort()).sync();
+            if (transport == TransportType.EPOLL && configProperties.isTcpQuickAck()) {
+                bootstrap.childOption(EpollChannelOption.TCP_QUICKACK, true);
+            }
+            if (acceptors > 1) {
+                bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+
+            // 每次绑定都会从 bossGroup 中轮流选出一个线程，监听 channel 分布在不同的线程上
+            List<Channel> channels = new ArrayList<>(acceptors);
+            for (int i = 0; i < acceptors; i++) {
+                channels.add(bootstrap.bind(configProperties.getPort()).sync().channel());
+            }
 
-            System.out.println("RPC 服务启动成功。。。");
-            // 阻塞当前代码，使 netty 服务器一直处于运行状态
-            channelFuture.channel().closeFuture().sync();
+            System.out.println("RPC 服务启动成功，传输方式：" + transport + "，监听 channel 数量：" + acceptors + "。。。");
+            // 端口绑定之后再注册，客户端收到推送时已经可以建立连接
+            register();
+            // 阻塞当前代码，使 netty 服务器一直处于运行状态，直到所有监听 channel 都关闭
+            for (Channel channel : channels) {
+                channel.closeFuture().sync();
+            }
         } catch (Throwable e) {
             e.printStackTrace();
         } finally {
@@ -76,8 +134,36 @@ public class RpcNettyServer {
         }
     }
 
+    /**
+     *  根据配置启动内嵌的注册中心，并把所有暴露的接口注册到注册中心
+     */
+    private void register() throws InterruptedException {
+        if (configProperties.isRegistryServer()) {
+            registryServer = new SocketRegistryServer(RegistryFactory.port(configProperties.getRegistryAddress()));
+            registryServer.start();
+        }
+        registry = RegistryFactory.create(configProperties.getRegistry(), configProperties.getRegistryAddress(),
+                configProperties.getReconnectDelay(), configProperties.getReconnectMaxDelay());
+        if (registry == null) {
+            return;
+        }
+        Provider provider = new Provider(configProperties.getAddress(), configProperties.getPort(),
+                configProperties.getProviderWeight());
+        for (Class<?> service : invokerRegistry.getServices()) {
+            registry.register(service.getName(), provider);
+        }
+        System.out.println("注册服务成功，提供者：" + provider + "，接口数量：" + invokerRegistry.getServices().size() + "。。。");
+    }
+
     public void close() {
         boolean success = false;
+        // 先注销，客户端不再选择这个提供者
+        if (registry != null) {
+            registry.close();
+        }
+        if (registryServer != null) {
+            registryServer.close();
+        }
         if (ObjectUtil.canShutdownThreadPool(bossGroup)) {
             bossGroup.shutdownGracefully();
             success = true;
@@ -86,10 +172,7 @@ public class RpcNettyServer {
             workerGroup.shutdownGracefully();
             success = true;
         }
-        if (ObjectUtil.canShutdownThreadPool(eventExecutors)) {
-            eventExecutors.shutdownGracefully();
-            success = true;
-        }
+        serverExecutor.close();
         if (success) {
             System.out.println("服务端关闭服务了。。。");
         }
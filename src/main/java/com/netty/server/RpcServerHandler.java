@@ -3,16 +3,23 @@ package com.netty.server;
 import com.netty.annotation.AutoImport;
 import com.netty.annotation.ObjectScan;
 import com.netty.code.MsgProtocol;
+import com.netty.code.MsgType;
+import com.netty.metrics.RpcMetrics;
+import com.netty.model.BatchRequest;
+import com.netty.model.BatchResponse;
 import com.netty.model.Null;
 import com.netty.model.RequestMsg;
 import com.netty.model.Void;
-import com.netty.reflection.BeanFactory;
-import com.netty.util.ByteUtil;
-import com.netty.util.ObjectUtil;
+import com.netty.serialize.BinarySerializer;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
-import java.lang.reflect.Method;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  *
@@ -26,8 +33,19 @@ import java.lang.reflect.Method;
 @ChannelHandler.Sharable
 public class RpcServerHandler extends SimpleChannelInboundHandler<MsgProtocol> {
 
+    /** 单向调用执行失败或者被拒绝的次数 */
+    private static final LongAdder ONE_WAY_ERRORS = RpcMetrics.counter("server.oneWayErrors");
+    /** 执行前已经超时而被丢弃的请求数 */
+    private static final LongAdder EXPIRED_REQUESTS = RpcMetrics.counter("server.expiredRequests");
+    /** 空闲超时而关闭的连接数 */
+    private static final LongAdder IDLE_CLOSES = RpcMetrics.counter("server.idleCloses");
+
+    @AutoImport
+    private InvokerRegistry invokerRegistry;
     @AutoImport
-    private BeanFactory beanFactory;
+    private ServerExecutor serverExecutor;
+    @AutoImport
+    private ServerLimiter serverLimiter;
 
     /**
      *  有客户端连接，就会触发该方法
@@ -39,42 +57,295 @@ public class RpcServerHandler extends SimpleChannelInboundHandler<MsgProtocol> {
     }
 
     /**
-     *  读取客户端的请求，进行处理
+     *  读取客户端的请求，提交给服务端线程池执行，当前方法在 IO 线程中执行，不能阻塞
      * @param ctx   channel上下文对象
      * @param msg   消息体
      */
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, MsgProtocol msg) throws Exception {
+    protected void channelRead0(ChannelHandlerContext ctx, MsgProtocol msg) {
+        MsgType type = msg.getType();
+        if (type == MsgType.HEARTBEAT) {
+            // 心跳在 IO 线程中直接回复，不经过并发限制和线程池，服务端繁忙时客户端也不会误判连接失效
+            write(ctx, MsgType.HEARTBEAT_ACK, msg.getRequestId(), msg.getSerializer(), null);
+            return;
+        }
+        if (type == MsgType.HANDSHAKE) {
+            // 下发方法签名表，客户端之后的请求只携带方法ID
+            write(ctx, MsgType.HANDSHAKE_ACK, msg.getRequestId(), msg.getSerializer(), invokerRegistry.getSignatures());
+            return;
+        }
+        if (type != MsgType.REQUEST && type != MsgType.ONEWAY && type != MsgType.BATCH_REQUEST) {
+            // 其他类型的消息不需要调用接口
+            return;
+        }
+        ServerLimiter.Permit permit = serverLimiter.acquire(msg);
+        if (permit == null) {
+            // 超过并发限制，请求没有执行，客户端可以稍后重试
+            reject(ctx, msg, "超过服务端并发限制，请稍后重试");
+            return;
+        }
+        if (!serverExecutor.execute(ctx.channel(), () -> handle(ctx, msg, permit))) {
+            // 线程池已满，立即告诉客户端服务端繁忙，不排队等待
+            permit.cancel();
+            reject(ctx, msg, "服务端繁忙，请稍后重试");
+        }
+    }
 
-        // 解析远程服务调用的请求数据
-        RequestMsg request = ByteUtil.cast(msg.getMsg(), RequestMsg.class);
+    /**
+     *  拒绝没有执行的请求
+     * @param ctx       channel上下文对象
+     * @param msg       消息体
+     * @param reason    拒绝的原因
+     */
+    private void reject(ChannelHandlerContext ctx, MsgProtocol msg, String reason) {
+        if (msg.getType() == MsgType.ONEWAY) {
+            ONE_WAY_ERRORS.increment();
+        } else {
+            // 专门的消息类型，客户端据此知道请求没有执行，可以换一个提供者重新发送
+            write(ctx, MsgType.REJECTED, msg.getRequestId(), msg.getSerializer(), reason);
+        }
+    }
 
-        // 通过 Bean 工厂获取接口实现类
-        Object instance = beanFactory.getServiceImpl(request.getClazz());
+    /**
+     *  在服务端线程池中执行请求
+     * @param ctx       channel上下文对象
+     * @param msg       消息体
+     * @param permit    请求占用的并发名额，请求完成后归还
+     */
+    private void handle(ChannelHandlerContext ctx, MsgProtocol msg, ServerLimiter.Permit permit) {
+        if (msg.isExpired()) {
+            // 请求在队列中等待期间已经超时，客户端不再等待结果，不再执行，排队的时间也计入延迟
+            EXPIRED_REQUESTS.increment();
+            permit.release();
+            return;
+        }
+        if (msg.getType() == MsgType.ONEWAY) {
+            invokeOneWay(msg);
+            permit.release();
+        } else if (msg.getType() == MsgType.BATCH_REQUEST) {
+            invokeBatch(ctx, msg, permit);
+        } else {
+            invokeRequest(ctx, msg, permit);
+        }
+    }
 
-        // 根据参数类型和方法名找到方法对象，执行该方法获得接口的执行结果
-        Class<?>[] paramsType = request.getParamsType();
-        Method method = ObjectUtil.isEmpty(paramsType)
-                ? instance.getClass().getDeclaredMethod(request.getMethodName())
-                : instance.getClass().getDeclaredMethod(request.getMethodName(), paramsType);
-        Object res = method.invoke(instance, request.getParams());
+    /**
+     *  执行请求，把结果回传给客户端
+     * @param ctx       channel上下文对象
+     * @param msg       消息体
+     * @param permit    请求占用的并发名额
+     */
+    private void invokeRequest(ChannelHandlerContext ctx, MsgProtocol msg, ServerLimiter.Permit permit) {
+        long requestId = msg.getRequestId();
+        byte serializer = msg.getSerializer();
+        Object data;
+        try {
+            data = invoke(msg);
+        } catch (Throwable e) {
+            // 接口实现抛出的异常，原样返回给客户端
+            permit.release();
+            write(ctx, MsgType.ERROR, requestId, serializer, e);
+            return;
+        }
+
+        if (data instanceof CompletionStage) {
+            // 接口是异步的，等 Future 完成后再回传结果，不占用当前线程
+            ((CompletionStage<?>) data).whenComplete((value, error) -> {
+                permit.release();
+                error = unwrap(error);
+                if (error != null) {
+                    write(ctx, MsgType.ERROR, requestId, serializer, error);
+                } else {
+                    write(ctx, MsgType.RESPONSE, requestId, serializer, value == null ? new Null() : value);
+                }
+            });
+        } else {
+            permit.release();
+            write(ctx, MsgType.RESPONSE, requestId, serializer, data);
+        }
+    }
+
+    /**
+     *  单向调用只执行接口方法，不回传结果，客户端也不会等待响应
+     * @param msg   消息体
+     */
+    private void invokeOneWay(MsgProtocol msg) {
+        try {
+            invoke(msg);
+        } catch (Throwable e) {
+            // 没有调用方可以接收异常，只记录失败次数
+            ONE_WAY_ERRORS.increment();
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     *  批量请求中的调用依次执行，全部完成（包括异步接口的 Future）后把结果合并成一个批量响应回传
+     * @param ctx       channel上下文对象
+     * @param msg       消息体
+     * @param permit    批量请求占用的并发名额
+     */
+    private void invokeBatch(ChannelHandlerContext ctx, MsgProtocol msg, ServerLimiter.Permit permit) {
+        long batchId = msg.getRequestId();
+        byte serializer = msg.getSerializer();
+        if (msg.getError() != null) {
+            // 解码器反序列化批量请求失败，整个批量请求以异常结束
+            permit.release();
+            write(ctx, MsgType.ERROR, batchId, serializer, msg.getError());
+            return;
+        }
+        BatchRequest batch = (BatchRequest) msg.getBody();
+        long[] requestIds = batch.getRequestIds();
+        RequestMsg[] requests = batch.getRequests();
+        Object[] results = new Object[requestIds.length];
+        boolean[] errors = new boolean[requestIds.length];
+        BatchResponse response = new BatchResponse(requestIds, results, errors);
+
+        // 未完成的调用数，初始的 1 代表当前线程，保证所有调用都提交后才可能回传结果
+        AtomicInteger remaining = new AtomicInteger(1);
+        for (int i = 0; i < requests.length; i++) {
+            Object data;
+            try {
+                data = invoke(requests[i]);
+            } catch (Throwable e) {
+                results[i] = e;
+                errors[i] = true;
+                continue;
+            }
+            if (data instanceof CompletionStage) {
+                int index = i;
+                remaining.incrementAndGet();
+                ((CompletionStage<?>) data).whenComplete((value, error) -> {
+                    error = unwrap(error);
+                    results[index] = error != null ? error : (value == null ? new Null() : value);
+                    errors[index] = error != null;
+                    if (remaining.decrementAndGet() == 0) {
+                        permit.release();
+                        writeBatch(ctx, batchId, serializer, response);
+                    }
+                });
+            } else {
+                results[i] = data;
+            }
+        }
+        if (remaining.decrementAndGet() == 0) {
+            permit.release();
+            writeBatch(ctx, batchId, serializer, response);
+        }
+    }
+
+    /**
+     *  回传批量响应，批量响应无法序列化时，逐个回传每次调用的结果，
+     *  再回传一个空的批量响应，让客户端清理该批量请求
+     * @param ctx           channel上下文对象
+     * @param batchId       批量请求的消息ID
+     * @param serializer    序列化方式
+     * @param response      批量响应
+     */
+    private void writeBatch(ChannelHandlerContext ctx, long batchId, byte serializer, BatchResponse response) {
+        ctx.writeAndFlush(new MsgProtocol(MsgType.BATCH_RESPONSE, batchId, serializer, response)).addListener(f -> {
+            if (!f.isSuccess() && ctx.channel().isActive()) {
+                long[] requestIds = response.getRequestIds();
+                for (int i = 0; i < requestIds.length; i++) {
+                    MsgType type = response.getErrors()[i] ? MsgType.ERROR : MsgType.RESPONSE;
+                    write(ctx, type, requestIds[i], serializer, response.getResults()[i]);
+                }
+                BatchResponse empty = new BatchResponse(new long[0], new Object[0], new boolean[0]);
+                ctx.writeAndFlush(new MsgProtocol(MsgType.BATCH_RESPONSE, batchId, serializer, empty));
+            }
+        });
+    }
+
+    /**
+     * @param error     异步接口的异常
+     * @return          去掉 CompletionException 的包装，返回原始异常
+     */
+    private static Throwable unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            return error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     *  将数据封装为自定义协议，带上请求ID返回客户端，客户端以此匹配对应的调用
+     * @param ctx           channel上下文对象
+     * @param type          消息类型，正常响应或异常响应
+     * @param requestId     请求ID
+     * @param serializer    序列化方式，与请求使用的序列化方式相同
+     * @param data          回传的数据
+     */
+    private void write(ChannelHandlerContext ctx, MsgType type, long requestId, byte serializer, Object data) {
+        // 数据由编码器直接序列化到发送缓冲区
+        ctx.writeAndFlush(new MsgProtocol(type, requestId, serializer, data)).addListener(f -> {
+            if (!f.isSuccess() && type != MsgType.ERROR && ctx.channel().isActive()) {
+                // 返回值无法序列化，把异常回传给客户端
+                write(ctx, MsgType.ERROR, requestId, serializer,
+                        new IllegalStateException("返回值序列化失败，" + f.cause().getMessage()));
+            }
+        });
+    }
+
+    /**
+     * @param msg   消息体
+     * @return      执行请求的接口方法，返回需要回传客户端的数据
+     */
+    private Object invoke(MsgProtocol msg) throws Throwable {
+
+        // 解析远程服务调用的请求数据
+        if (msg.getError() != null) {
+            // 解码器反序列化请求失败
+            throw msg.getError();
+        }
+        return invoke((RequestMsg) msg.getBody());
+    }
+
+    /**
+     * @param request   请求对象
+     * @return          执行请求的接口方法，返回需要回传客户端的数据
+     */
+    private Object invoke(RequestMsg request) throws Throwable {
+        // 从注册表中找到服务启动时解析好的方法调用器，执行该方法获得接口的执行结果
+        MethodInvoker invoker = request.getMethodId() >= 0
+                ? invokerRegistry.get(request.getMethodId())
+                : invokerRegistry.get(request.getClazz(), request.getMethodName(), request.getParamsType());
+        Object res = invoker.invoke(request.getParams());
 
         /*
          *  判断有无返回值，Void 只实现了 Serializable 接口的空对象，
          *  仅仅表示没有返回值，在客户端获取结果的方法中可以看到它们的使用
          */
-        boolean hasReturn = !Void.class.getSimpleName().toLowerCase()
-                .equalsIgnoreCase(method.getReturnType().getName());
+        boolean hasReturn = invoker.hasReturn();
 
         /*
          *  Null 只实现了 Serializable 接口的空对象，仅仅表示数据为空，
-         *  为了在调用 ByteUtil.getBytes 可以将空值序列化
+         *  为了在序列化时可以将空值序列化
          */
-        Object data = hasReturn ? (res == null ? new Null() : res) : new Void();
+        return hasReturn ? (res == null ? new Null() : res) : new Void();
+    }
 
-        // 将数据封装为自定义协议，返回客户端
-        byte[] bytes = ByteUtil.getBytes(data);
-        ctx.writeAndFlush(new MsgProtocol(bytes));
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+        if (evt instanceof IdleStateEvent && ((IdleStateEvent) evt).state() == IdleState.READER_IDLE) {
+            // 暂停读取期间读不到心跳，不能据此判断客户端失效
+            if (ctx.channel().config().isAutoRead()) {
+                IDLE_CLOSES.increment();
+                System.err.println("客户端空闲超时，关闭连接：" + ctx.channel().remoteAddress());
+                ctx.close();
+            }
+            return;
+        }
+        if (evt instanceof IdleStateEvent && ((IdleStateEvent) evt).state() == IdleState.WRITER_IDLE) {
+            /*
+             *  暂停读取期间读不到客户端的心跳，也就不会回复心跳响应，
+             *  如果同时也没有响应可写，由服务端主动发送心跳，客户端不会因为读空闲而断开正常的连接
+             */
+            if (!ctx.channel().config().isAutoRead()) {
+                write(ctx, MsgType.HEARTBEAT, 0, BinarySerializer.ID, null);
+            }
+            return;
+        }
+        ctx.fireUserEventTriggered(evt);
     }
 
     @Override
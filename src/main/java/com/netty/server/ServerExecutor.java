@@ -0,0 +1,146 @@
+package com.netty.server;
+
+import com.netty.annotation.AutoImport;
+import com.netty.annotation.ObjectScan;
+import com.netty.config.ConfigProperties;
+import com.netty.config.ExecutorMode;
+import com.netty.metrics.RpcMetrics;
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ *
+ *  服务端执行接口方法的线程池，工作队列有界。
+ *      1、队列长度达到高水位时，暂停提交任务的 channel 的读取（autoRead 关闭），数据积压在 TCP 缓冲区中，由 TCP 反压到客户端
+ *      2、任务执行完毕后队列长度降到低水位，恢复所有被暂停的 channel 的读取
+ *      3、队列已满时直接拒绝，由处理器立即回传"服务端繁忙"，客户端快速失败，不会无限排队
+ *
+ *  virtual 模式下每个请求一个虚拟线程，接口方法阻塞在下游 IO 上时不占用平台线程，
+ *  没有排队，以同时执行的请求数代替队列长度计算水位，超过 serverQueueSize 时拒绝
+ *
+ * @author yehuisheng
+ */
+@ObjectScan
+public class ServerExecutor {
+
+    /** 队列已满而被拒绝的任务数 */
+    private static final LongAdder REJECTED = RpcMetrics.counter("server.rejected");
+    /** 暂停 channel 读取的次数 */
+    private static final LongAdder READ_PAUSES = RpcMetrics.counter("server.readPauses");
+
+    @AutoImport
+    private ConfigProperties configProperties;
+
+    private ExecutorService executor;
+    /** 同时执行的请求数上限，只在 virtual 模式下使用，platform 模式由队列长度限制 */
+    private int maxRunning;
+    /** 已提交还未执行完的请求数 */
+    private final AtomicInteger running = new AtomicInteger();
+    /** 计算水位使用的积压数：platform 模式为队列长度，virtual 模式为执行中的请求数 */
+    private IntSupplier backlog;
+    /** 暂停读取的队列长度 */
+    private int highWaterMark;
+    /** 恢复读取的队列长度 */
+    private int lowWaterMark;
+    /** 被暂停读取的 channel */
+    private final Set<Channel> pausedChannels = ConcurrentHashMap.newKeySet();
+
+    /**
+     *  根据配置创建线程池
+     */
+    public void start() {
+        int threads = configProperties.getServerThreads() > 0
+                ? configProperties.getServerThreads()
+                : Runtime.getRuntime().availableProcessors();
+        int queueSize = Math.max(configProperties.getServerQueueSize(), 1);
+        // 高水位至少为 2，保证暂停读取时队列中还有任务，任务完成后会检查并恢复读取
+        this.highWaterMark = Math.max(queueSize * 3 / 4, Math.min(queueSize, 2));
+        this.lowWaterMark = queueSize / 4;
+        if (ExecutorMode.of(configProperties.getServerExecutor()) == ExecutorMode.VIRTUAL) {
+            this.maxRunning = queueSize;
+            this.executor = ExecutorMode.newVirtualThreadPerTaskExecutor("rpc-server");
+            this.backlog = running::get;
+            RpcMetrics.gauge("server.activeThreads", running::get);
+            System.out.println("服务端使用虚拟线程执行接口方法，同时执行的请求数上限：" + queueSize);
+        } else {
+            this.maxRunning = Integer.MAX_VALUE;
+            ArrayBlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(queueSize);
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, queue,
+                    new DefaultThreadFactory("rpc-server"), new ThreadPoolExecutor.AbortPolicy());
+            this.executor = pool;
+            this.backlog = queue::size;
+            RpcMetrics.gauge("server.activeThreads", pool::getActiveCount);
+        }
+        RpcMetrics.gauge("server.queueDepth", backlog::getAsInt);
+        RpcMetrics.gauge("server.pausedChannels", pausedChannels::size);
+    }
+
+    /**
+     * @param channel   提交任务的 channel，队列积压时暂停它的读取，只在该 channel 的 IO 线程中调用
+     * @param task      任务
+     * @return          提交任务，队列已满（virtual 模式下执行中的请求数达到上限）则返回 false
+     */
+    public boolean execute(Channel channel, Runnable task) {
+        if (running.incrementAndGet() > maxRunning) {
+            running.decrementAndGet();
+            REJECTED.increment();
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    running.decrementAndGet();
+                    resumeIfDrained();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            running.decrementAndGet();
+            REJECTED.increment();
+            return false;
+        }
+        if (backlog.getAsInt() >= highWaterMark && channel.config().isAutoRead()) {
+            // 先登记再暂停，任务在两步之间执行完时也能找到这个 channel
+            pausedChannels.add(channel);
+            channel.config().setAutoRead(false);
+            READ_PAUSES.increment();
+            // 暂停之前积压可能已经降到低水位，之后不会再有任务触发恢复，需要再检查一次
+            resumeIfDrained();
+        }
+        return true;
+    }
+
+    /**
+     *  积压数降到低水位后，恢复被暂停的 channel 的读取
+     */
+    private void resumeIfDrained() {
+        if (pausedChannels.isEmpty() || backlog.getAsInt() > lowWaterMark) {
+            return;
+        }
+        for (Iterator<Channel> iterator = pausedChannels.iterator(); iterator.hasNext(); ) {
+            Channel channel = iterator.next();
+            iterator.remove();
+            // 在 channel 的 IO 线程中恢复，排在该线程正在进行的暂停之后，不会被暂停覆盖
+            channel.eventLoop().execute(() -> channel.config().setAutoRead(true));
+        }
+    }
+
+    public void close() {
+        if (executor != null && !executor.isShutdown()) {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,205 @@
+package com.netty.server;
+
+import com.netty.annotation.AutoImport;
+import com.netty.annotation.ObjectScan;
+import com.netty.code.MsgProtocol;
+import com.netty.code.MsgType;
+import com.netty.config.ConfigProperties;
+import com.netty.metrics.RpcMetrics;
+import com.netty.model.BatchRequest;
+import com.netty.model.RequestMsg;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *
+ *  服务端的自适应并发限制，根据配置 concurrencyLimit 选择：
+ *      none：不限制（默认）
+ *      global：所有请求共用一个限制
+ *      service：每个服务接口一个限制，一个接口变慢不会占满其他接口的名额
+ *
+ *  请求在 IO 线程中获取名额，获取失败时立即拒绝；请求完成（包括异步接口的 Future 完成）后归还名额并记录延迟。
+ *  批量请求按一个请求计算，service 模式下占用其中每个接口的一个名额
+ *
+ * @author yehuisheng
+ */
+@ObjectScan
+public class ServerLimiter {
+
+    /** 超过并发限制而被拒绝的请求数 */
+    private static final LongAdder REJECTED = RpcMetrics.counter("server.limitRejected");
+    /** 不限制时使用的名额，归还时什么也不做 */
+    private static final Permit UNLIMITED = new Permit(new ConcurrencyLimiter[0]);
+
+    @AutoImport
+    private ConfigProperties configProperties;
+    @AutoImport
+    private InvokerRegistry invokerRegistry;
+
+    private volatile Mode mode;
+    /** global 模式使用的限制，所有请求共用这个数组 */
+    private ConcurrencyLimiter[] globalLimiters;
+    /** service 模式下每个接口的限制 */
+    private final Map<Class<?>, ConcurrencyLimiter> serviceLimiters = new ConcurrentHashMap<>();
+
+    private enum Mode {
+        NONE, GLOBAL, SERVICE
+    }
+
+    /**
+     *  根据配置初始化并发限制
+     */
+    public void start() {
+        String name = configProperties.getConcurrencyLimit().toLowerCase();
+        switch (name) {
+            case "none":
+                mode = Mode.NONE;
+                break;
+            case "global":
+                globalLimiters = new ConcurrencyLimiter[]{
+                        newLimiter("server.concurrencyLimit", "server.limitInFlight")};
+                mode = Mode.GLOBAL;
+                break;
+            case "service":
+                mode = Mode.SERVICE;
+                break;
+            default:
+                throw new IllegalArgumentException("不支持的并发限制方式：" + name);
+        }
+    }
+
+    /**
+     * @param msg   请求、单向请求或批量请求
+     * @return      获取请求需要的名额，超过并发限制时返回 null
+     */
+    public Permit acquire(MsgProtocol msg) {
+        Mode mode = this.mode;
+        if (mode == null || mode == Mode.NONE) {
+            return UNLIMITED;
+        }
+        ConcurrencyLimiter[] limiters;
+        if (mode == Mode.GLOBAL) {
+            limiters = globalLimiters;
+        } else {
+            limiters = serviceLimiters(msg);
+        }
+        for (int i = 0; i < limiters.length; i++) {
+            if (!limiters[i].tryAcquire()) {
+                for (int j = 0; j < i; j++) {
+                    limiters[j].cancel();
+                }
+                REJECTED.increment();
+                return null;
+            }
+        }
+        return new Permit(limiters);
+    }
+
+    /**
+     * @param msg   请求、单向请求或批量请求
+     * @return      请求调用的接口对应的限制，找不到接口时返回空数组，由执行请求时报告错误
+     */
+    private ConcurrencyLimiter[] serviceLimiters(MsgProtocol msg) {
+        if (msg.getError() != null) {
+            return new ConcurrencyLimiter[0];
+        }
+        if (msg.getType() != MsgType.BATCH_REQUEST) {
+            ConcurrencyLimiter limiter = serviceLimiter((RequestMsg) msg.getBody());
+            return limiter == null ? new ConcurrencyLimiter[0] : new ConcurrencyLimiter[]{limiter};
+        }
+        RequestMsg[] requests = ((BatchRequest) msg.getBody()).getRequests();
+        ConcurrencyLimiter[] limiters = new ConcurrencyLimiter[requests.length];
+        int size = 0;
+        for (RequestMsg request : requests) {
+            ConcurrencyLimiter limiter = serviceLimiter(request);
+            if (limiter != null && !contains(limiters, size, limiter)) {
+                limiters[size++] = limiter;
+            }
+        }
+        return size == limiters.length ? limiters : Arrays.copyOf(limiters, size);
+    }
+
+    /**
+     * @param request   请求对象
+     * @return          请求调用的接口对应的限制，第一次调用该接口时创建
+     */
+    private ConcurrencyLimiter serviceLimiter(RequestMsg request) {
+        Class<?> service;
+        if (request.getMethodId() >= 0) {
+            try {
+                service = invokerRegistry.get(request.getMethodId()).getService();
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        } else {
+            service = request.getClazz();
+        }
+        if (service == null) {
+            return null;
+        }
+        ConcurrencyLimiter limiter = serviceLimiters.get(service);
+        if (limiter == null) {
+            limiter = serviceLimiters.computeIfAbsent(service, clazz -> newLimiter(
+                    "server.concurrencyLimit." + clazz.getSimpleName(),
+                    "server.limitInFlight." + clazz.getSimpleName()));
+        }
+        return limiter;
+    }
+
+    /**
+     * @param limitGauge        并发限制的指标名称
+     * @param inFlightGauge     执行中请求数的指标名称
+     * @return                  根据配置创建并发限制
+     */
+    private ConcurrencyLimiter newLimiter(String limitGauge, String inFlightGauge) {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(configProperties.getConcurrencyLimitInitial(),
+                configProperties.getConcurrencyLimitMin(), configProperties.getConcurrencyLimitMax());
+        RpcMetrics.gauge(limitGauge, limiter::getLimit);
+        RpcMetrics.gauge(inFlightGauge, limiter::getInFlight);
+        return limiter;
+    }
+
+    private static boolean contains(ConcurrencyLimiter[] limiters, int size, ConcurrencyLimiter limiter) {
+        for (int i = 0; i < size; i++) {
+            if (limiters[i] == limiter) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     *  一个请求占用的名额，请求完成后调用 release 归还，请求没有执行时调用 cancel 归还
+     */
+    public static class Permit {
+
+        private final ConcurrencyLimiter[] limiters;
+        /** 请求到达的时间 */
+        private final long start;
+
+        private Permit(ConcurrencyLimiter[] limiters) {
+            this.limiters = limiters;
+            this.start = limiters.length == 0 ? 0 : System.nanoTime();
+        }
+
+        public void release() {
+            if (limiters.length == 0) {
+                return;
+            }
+            long rtt = System.nanoTime() - start;
+            for (ConcurrencyLimiter limiter : limiters) {
+                limiter.release(rtt);
+            }
+        }
+
+        public void cancel() {
+            for (ConcurrencyLimiter limiter : limiters) {
+                limiter.cancel();
+            }
+        }
+
+    }
+
+}
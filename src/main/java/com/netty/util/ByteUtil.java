@@ -1,7 +1,9 @@
 package com.netty.util;
 
 import com.google.gson.Gson;
-import com.netty.model.Null;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 import java.io.*;
 
 /**
@@ -10,24 +12,47 @@ import java.io.*;
  */
 public class ByteUtil {
 
+    /** Gson 是线程安全的，复用同一个对象 */
+    private static final Gson GSON = new Gson();
+
     /**
-     * @param bytes     字节数组
+     * @param buf       缓冲区
      * @param clazz     类型
      * @param <T>       泛型转换
-     * @return  将字节数组转为 Java 对象
+     * @return  直接从缓冲区读取数据，转为 Java 对象
      */
-    public static <T> T cast(byte[] bytes, Class<T> clazz) {
-        if (bytes == null || clazz == null) {
+    public static <T> T cast(ByteBuf buf, Class<T> clazz) {
+        if (buf == null || clazz == null) {
             return null;
         }
-        // 读取字节数组，转为 Object
-        try (ByteArrayInputStream bis = new ByteArrayInputStream(bytes);
-             ObjectInputStream ois = new ObjectInputStream(bis)) {
+        return cast(new ByteBufInputStream(buf), clazz);
+    }
+
+
+    /**
+     * @param obj   Object 类型的对象
+     * @param buf   缓冲区
+     */
+    public static void write(Object obj, ByteBuf buf) {
+        try {
+            write(obj, new ByteBufOutputStream(buf));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("序列化失败，" + e.getMessage(), e);
+        }
+    }
+
+
+    /**
+     * @param is        输入流
+     * @param clazz     类型
+     * @return  读取输入流，转为 Java 对象
+     */
+    private static <T> T cast(InputStream is, Class<T> clazz) {
+        try (ObjectInputStream ois = new ObjectInputStream(is)) {
             Object obj = ois.readObject();
             if (obj instanceof String) {
                 // 用 Gson 进行反序列化
-                Gson gson = new Gson();
-                return gson.fromJson(obj.toString(), clazz);
+                return GSON.fromJson(obj.toString(), clazz);
             } else {
                 return clazz.cast(obj);
             }
@@ -38,26 +63,18 @@ public class ByteUtil {
 
 
     /**
-     * @param obj    Object 类型的对象
-     * @return      将对象转为字节数组
+     * @param obj   Object 类型的对象
+     * @param os    输出流
      */
-    public static byte[] getBytes(Object obj) {
+    private static void write(Object obj, OutputStream os) throws IOException {
         if (obj instanceof Serializable) {
             // 已经序列化了
-            byte[] bytes = null;
-            try (ByteArrayOutputStream bo = new ByteArrayOutputStream();
-                 ObjectOutputStream oos = new ObjectOutputStream(bo)) {
+            try (ObjectOutputStream oos = new ObjectOutputStream(os)) {
                 oos.writeObject(obj);
-                bytes = bo.toByteArray();
-            } catch (Exception e) {
-                e.printStackTrace();
             }
-            return bytes;
         } else {
             // 使用 Gson 进行序列化
-            Gson gson = new Gson();
-            String json = gson.toJson(obj);
-            return getBytes(json);
+            write(GSON.toJson(obj), os);
         }
     }
 
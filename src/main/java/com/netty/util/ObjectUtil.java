@@ -1,10 +1,17 @@
 package com.netty.util;
 
 import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * @author yehuisheng
@@ -46,4 +53,54 @@ public class ObjectUtil {
         return executor != null && !executor.isShutdown();
     }
 
+    /**
+     * @param attempts  已经连续失败的次数
+     * @param initial   第一次重试的延迟（单位毫秒）
+     * @param max       延迟的上限（单位毫秒）
+     * @return          指数退避的重试延迟，在 [base/2, base] 之间随机，避免大量连接同时重试
+     */
+    public static long backoff(int attempts, long initial, long max) {
+        initial = Math.max(initial, 1);
+        max = Math.max(max, initial);
+        long base = Math.min(max, initial << Math.min(attempts, 30));
+        return base / 2 + ThreadLocalRandom.current().nextLong(base / 2 + 1);
+    }
+
+
+
+    /**
+     * @param clazz     类对象
+     * @return          类及其父类实现的所有接口，包括接口继承的父接口
+     */
+    public static Set<Class<?>> getInterfaces(Class<?> clazz) {
+        Set<Class<?>> set = new LinkedHashSet<>();
+        Deque<Class<?>> deque = new ArrayDeque<>();
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            deque.addAll(Arrays.asList(c.getInterfaces()));
+        }
+        while (!deque.isEmpty()) {
+            Class<?> c = deque.poll();
+            if (set.add(c)) {
+                deque.addAll(Arrays.asList(c.getInterfaces()));
+            }
+        }
+        return set;
+    }
+
+    /**
+     * @param clazz         接口
+     * @param methodName    方法名
+     * @param paramsType    参数类型
+     * @return              方法签名，格式为 接口名#方法名(参数类型,参数类型)，客户端和服务端据此对应方法ID
+     */
+    public static String getSignature(Class<?> clazz, String methodName, Class<?>[] paramsType) {
+        StringJoiner joiner = new StringJoiner(",", clazz.getName() + "#" + methodName + "(", ")");
+        if (paramsType != null) {
+            for (Class<?> type : paramsType) {
+                joiner.add(type.getName());
+            }
+        }
+        return joiner.toString();
+    }
+
 }